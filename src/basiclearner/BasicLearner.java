@@ -1,12 +1,28 @@
 package basiclearner;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Calendar;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import net.automatalib.automata.transout.MealyMachine;
 import net.automatalib.commons.dotutil.DOT;
@@ -15,8 +31,6 @@ import net.automatalib.words.Alphabet;
 import net.automatalib.words.Word;
 import net.automatalib.words.impl.SimpleAlphabet;
 
-import com.google.common.collect.Lists;
-
 import de.learnlib.acex.analyzers.AcexAnalyzers;
 import de.learnlib.algorithms.kv.mealy.KearnsVaziraniMealy;
 import de.learnlib.algorithms.lstargeneric.ce.ObservationTableCEXHandlers;
@@ -32,9 +46,7 @@ import de.learnlib.eqtests.basic.WpMethodEQOracle;
 import de.learnlib.eqtests.basic.mealy.RandomWalkEQOracle;
 import de.learnlib.experiments.Experiment.MealyExperiment;
 import de.learnlib.oracles.DefaultQuery;
-import de.learnlib.oracles.ResetCounterSUL;
 import de.learnlib.oracles.SULOracle;
-import de.learnlib.oracles.SymbolCounterSUL;
 import de.learnlib.statistics.Counter;
 
 /**
@@ -58,6 +70,8 @@ public class BasicLearner {
 	/**
 	 * For controlled experiments only: store every hypotheses as a file. Useful for 'debugging'
 	 * if the learner does not terminate (hint: the TTT-algorithm produces many hypotheses).
+	 * They are written in the background as transition tables (.txt, see HypothesisSnapshot),
+	 * and if learning is faster than writing, only the newest are kept.
 	 */
 	public static boolean saveAllHypotheses = true;
 	/**
@@ -72,6 +86,69 @@ public class BasicLearner {
 	 * MaxDepth-parameter for W-method and Wp-method. Typically not larger than 3. Decrease for quicker runs.
 	 */
 	public static int w_wp_methods_maxDepth = 2;
+	/**
+	 * For random Wp-method, the expected length of the random middle part of the test words
+	 */
+	public static double randomWp_expectedMiddleLength = 3;
+	/**
+	 * For random Wp-method, the budget for testing one hypothesis: the number of symbols and test words, and the
+	 * time in milliseconds. Testing stops at the first limit reached, 0 means no limit.
+	 */
+	public static long
+			randomWp_numberOfSymbols = 10000,
+			randomWp_numberOfQueries = 0,
+			randomWp_timeLimitMillis = 0;
+	/**
+	 * File in which all observations are stored, so that a later experiment on the same SUL and alphabet
+	 * starts with all observations of earlier experiments (and does not query them again). Null to disable.
+	 */
+	public static String observationLogFilename = null;
+	/**
+	 * Shorten every counterexample before refining the hypothesis with it, using the observations and at most a
+	 * few membership queries. Long counterexamples (e.g. from a random walk) make refining expensive.
+	 */
+	public static boolean shortenCounterexamples = false;
+	/**
+	 * For controlled experiments only: file in which a checkpoint is saved after every counterexample, so that
+	 * resumeControlledExperiment can continue the experiment after a crash. Use it together with
+	 * observationLogFilename, so that resuming does not need to query the SUL again. Null to disable.
+	 */
+	public static String checkpointFilename = null;
+	/**
+	 * For controlled experiments only: name of the files (extensions .csv and .json are added automatically) to
+	 * which the metrics of every round are written while learning, e.g. to graph long runs. A resumed experiment
+	 * adds -from-round and its first round to the name, so that the files of the earlier run are kept. Null to disable.
+	 */
+	public static String metricsFilename = null;
+	/**
+	 * Tolerate occasional wrong outputs of the SUL: an observation which contradicts an earlier one is repeated at
+	 * most this many times, and the output of the majority is kept (see NonDeterminismResolver). The experiment only
+	 * stops at non-determinism without a clear majority. At least 2, or 0 to stop at any non-determinism.
+	 */
+	public static int nonDeterminism_maxRepetitions = 0;
+	/**
+	 * The maximum time in milliseconds to spend on repeating one contradicting observation, 0 means no limit
+	 */
+	public static long nonDeterminism_timeLimitMillis = NonDeterminismResolver.DEFAULT_TIME_LIMIT_MILLIS;
+	/**
+	 * For a single SUL which can save its state (a SnapshotSUL, e.g. SocketSUL with setSnapshotsEnabled if the system
+	 * supports the snapshot commands): the memory budget in bytes for snapshots after frequently used prefixes, from which queries continue
+	 * instead of replaying the prefix (see SnapshotCachingOracle). 0 to disable.
+	 */
+	public static long snapshotMemoryBudget = 0;
+	/**
+	 * For a single SUL without observationLogFilename: the maximum number of nodes of the observation tree in
+	 * memory. The least recently used parts of the tree are written to a temporary file (see
+	 * SpillingObservationTree), so that long experiments do not run out of memory. 0 to keep all nodes in memory.
+	 */
+	public static long observationTree_maxResidentNodes = 0;
+	/**
+	 * File with a model of an earlier version of the SUL, to learn a new version from: a dot-file written by
+	 * produceOutput, or a transition table written for saveAllHypotheses. The model is validated against the SUL
+	 * before the first test, and its distinguishing words are given to the learner (see PreviousModelEQOracle),
+	 * so that relearning a slightly changed system takes much less queries. Null to learn from scratch.
+	 */
+	public static String previousModelFilename = null;
 
 	//*****************************************//
 	// Predefined learning and testing methods //
@@ -84,18 +161,29 @@ public class BasicLearner {
 	/**
 	 * The testing algorithms. Random walk is the simplest, but performs badly on large models:
 	 * the chance of hitting a erroneous long trace is very small. WMethod and WpMethod are
-	 * smarter. UserQueries asks the user for which inputs to try as counter-example: have a
+	 * smarter. RandomWpMethod takes random samples of the WpMethod test words, also longer ones,
+	 * within a budget. UserQueries asks the user for which inputs to try as counter-example: have a
 	 * look at the hypothesis, and try to think of one
 	 */
-	public enum TestingMethod { RandomWalk, WMethod, WpMethod, UserQueries }
+	public enum TestingMethod { RandomWalk, WMethod, WpMethod, RandomWpMethod, UserQueries }
 
 	public static LearningAlgorithm<MealyMachine<?, String, ?, String>, String, Word<String>> loadLearner(
 			LearningMethod learningMethod, MealyMembershipOracle<String,String> sulOracle, Alphabet<String> alphabet) {
+		return loadLearner(learningMethod, sulOracle, alphabet, Collections.<Word<String>>emptyList());
+	}
+
+	/**
+	 * @param initialSuffixes suffixes for the initial observation table of L*, e.g. the distinguishing words of
+	 * a previous model. The other learners do not use them.
+	 */
+	public static LearningAlgorithm<MealyMachine<?, String, ?, String>, String, Word<String>> loadLearner(
+			LearningMethod learningMethod, MealyMembershipOracle<String,String> sulOracle, Alphabet<String> alphabet,
+			List<Word<String>> initialSuffixes) {
 		switch (learningMethod){
 			case LStar:
-				return new ExtensibleLStarMealy<String, String>(alphabet, sulOracle, Lists.<Word<String>>newArrayList(), ObservationTableCEXHandlers.CLASSIC_LSTAR, ClosingStrategies.CLOSE_SHORTEST);
+				return new ExtensibleLStarMealy<String, String>(alphabet, sulOracle, new ArrayList<>(initialSuffixes), ObservationTableCEXHandlers.CLASSIC_LSTAR, ClosingStrategies.CLOSE_SHORTEST);
 			case RivestSchapire:
-				return new ExtensibleLStarMealy<String, String>(alphabet, sulOracle, Lists.<Word<String>>newArrayList(), ObservationTableCEXHandlers.RIVEST_SCHAPIRE, ClosingStrategies.CLOSE_SHORTEST);
+				return new ExtensibleLStarMealy<String, String>(alphabet, sulOracle, new ArrayList<>(initialSuffixes), ObservationTableCEXHandlers.RIVEST_SCHAPIRE, ClosingStrategies.CLOSE_SHORTEST);
 			case TTT:
 				return new TTTLearnerMealy<String, String>(alphabet, sulOracle, AcexAnalyzers.LINEAR_FWD);
 			case KearnsVazirani:
@@ -116,6 +204,8 @@ public class BasicLearner {
 				return new WMethodEQOracle.MealyWMethodEQOracle<>(w_wp_methods_maxDepth, sulOracle);
 			case WpMethod:
 				return new WpMethodEQOracle.MealyWpMethodEQOracle<>(w_wp_methods_maxDepth, sulOracle);
+			case RandomWpMethod:
+				return new ParallelEQOracle<>(Collections.singletonList(sul), randomWpGenerator());
 			case UserQueries:
 				return new UserEQOracle(sul);
 			default:
@@ -123,6 +213,14 @@ public class BasicLearner {
 		}
 	}
 
+	/**
+	 * @return a test word generator for the random Wp-method, with the current settings
+	 */
+	public static TestWordGenerator<String> randomWpGenerator() {
+		return new RandomWpWordGenerator<>(randomWp_expectedMiddleLength, randomWp_numberOfSymbols,
+				randomWp_numberOfQueries, randomWp_timeLimitMillis, new Random(123456l));
+	}
+
 	/**
 	 * Simple example of running a learning experiment
 	 * @param learner Learning algorithm, wrapping the SUL
@@ -157,7 +255,11 @@ public class BasicLearner {
 			) throws IOException {
 		Alphabet<String> learlibAlphabet = new SimpleAlphabet<String>(alphabet);
 		LearningSetup learningSetup = new LearningSetup(sul, learningMethod, testingMethod, learlibAlphabet);
-		runSimpleExperiment(learningSetup.learner, learningSetup.eqOracle, learlibAlphabet);
+		try {
+			runSimpleExperiment(learningSetup.learner, learningSetup.eqOracle, learlibAlphabet);
+		} finally {
+			learningSetup.close();
+		}
 	}
 	
 	/**
@@ -175,75 +277,79 @@ public class BasicLearner {
 			EquivalenceOracle<MealyMachine<?, String, ?, String>, String, Word<String>> eqOracle,
 			Counter nrSymbols, Counter nrResets,
 			Alphabet<String> alphabet) throws IOException {
+		ExperimentMetrics metrics = new ExperimentMetrics(nrSymbols, nrResets, null, null);
+		metrics.addListener(new ConsoleExperimentListener());
+		runControlledExperiment(learner, eqOracle, metrics, alphabet);
+	}
+
+	/**
+	 * More detailed example of running a learning experiment. Starts learning, and then loops testing,
+	 * and if counterexamples are found, refining again. Measures every round in the given metrics, which
+	 * notify their listeners, and are also written to a file if metricsFilename is set
+	 * @param learner learner Learning algorithm, wrapping the SUL
+	 * @param eqOracle Testing algorithm, wrapping the SUL
+	 * @param metrics Metrics for the experiment, with the counters of the SUL
+	 * @param alphabet Input alphabet
+	 * @throws IOException
+	 */
+	public static void runControlledExperiment(
+			LearningAlgorithm<MealyMachine<?, String, ?, String>, String, Word<String>> learner,
+			EquivalenceOracle<MealyMachine<?, String, ?, String>, String, Word<String>> eqOracle,
+			ExperimentMetrics metrics,
+			Alphabet<String> alphabet) throws IOException {
+		runControlledExperiment(learner, eqOracle, metrics, alphabet, null);
+	}
+
+	/**
+	 * The loop of runControlledExperiment, which first refines with the counterexamples of the given checkpoint
+	 * (if any), and records every new counterexample in it
+	 */
+	private static void runControlledExperiment(
+			LearningAlgorithm<MealyMachine<?, String, ?, String>, String, Word<String>> learner,
+			EquivalenceOracle<MealyMachine<?, String, ?, String>, String, Word<String>> eqOracle,
+			ExperimentMetrics metrics,
+			Alphabet<String> alphabet,
+			ExperimentCheckpoint checkpoint) throws IOException {
+		// intermediate hypotheses are written in the background, only the final model is rendered as PDF
+		HypothesisWriter hypothesisWriter = saveAllHypotheses ? new HypothesisWriter() : null;
 		try {
-			// prepare some counters for printing statistics
-			int iteration = 1;
-			long lastNrLearnQueries = 0, lastNrLearnSymbols = 0, 
-				 lastNrTestQueries = 0, lastNrTestSymbols = 0,
-				 currNrLearnQueries = 0, currNrLearnSymbols = 0,
-				 currNrTestQueries = 0, currNrTestSymbols = 0,
-				 totalNrLearnQueries = 0, totalNrLearnSymbols = 0,
-				 totalNrTestQueries = 0, totalNrTestSymbols = 0;
-			
 			// start the actual learning
+			metrics.startPhase(ExperimentMetrics.Phase.LEARNING);
 			learner.startLearning();
+			if (checkpoint != null && !checkpoint.getCounterexamples().isEmpty()) {
+				// rebuild the learner of the checkpoint, its queries are answered by the observation log
+				for (DefaultQuery<String, Word<String>> ce : checkpoint.getCounterexamples()) {
+					learner.refineHypothesis(ce);
+				}
+				System.out.println("Resumed after " + checkpoint.getCounterexamples().size() + " counterexamples");
+			}
 			
 			while(true) {
 				// store hypothesis as file
 				if(saveAllHypotheses) {
-					String outputFilename = INTERMEDIATE_HYPOTHESIS_FILENAME + iteration;
-					produceOutput(outputFilename, learner.getHypothesisModel(), alphabet, false);
+					metrics.startPhase(ExperimentMetrics.Phase.OUTPUT);
+					String outputFilename = INTERMEDIATE_HYPOTHESIS_FILENAME + metrics.getNextRound();
+					hypothesisWriter.submit(outputFilename, HypothesisSnapshot.of(learner.getHypothesisModel(), alphabet));
 				}
 				
-				// Calculate number of Learning queries/symbols
-				totalNrLearnQueries = nrResets.getCount() - totalNrTestQueries;
-				totalNrLearnSymbols = nrSymbols.getCount() - totalNrTestSymbols;
-				currNrLearnQueries = totalNrLearnQueries - lastNrLearnQueries;
-				currNrLearnSymbols = totalNrLearnSymbols - lastNrLearnSymbols;
-				
 				// Search for Counter Example
+				metrics.startPhase(ExperimentMetrics.Phase.TESTING);
 				DefaultQuery<String, Word<String>> ce = eqOracle.findCounterExample(learner.getHypothesisModel(), alphabet);
-				
-				// Calculate number of Testing queries/symbols
-				totalNrTestQueries = nrResets.getCount() - totalNrLearnQueries;
-				totalNrTestSymbols = nrSymbols.getCount() - totalNrLearnSymbols;
-				currNrTestQueries = totalNrTestQueries - lastNrTestQueries;
-				currNrTestSymbols = totalNrTestSymbols - lastNrTestSymbols;
-				
-				// set up counters for next iteration
-				lastNrLearnQueries = currNrLearnQueries;
-				lastNrLearnSymbols = currNrLearnSymbols;
-				lastNrTestQueries = currNrTestQueries;
-				lastNrTestSymbols = currNrTestSymbols;
-				
-				// Print statistics
-				String leftAlignFormat = "| %-14s | %-7d | %-7d |%n";
-				String tableHeaderIter = "| Iteration %-4d | Queries | Tokens  |%n";				
-				System.out.println("Iteration " + iteration + ": " + Calendar.getInstance().getTime());
-				System.out.println("Hypothesis size: " + learner.getHypothesisModel().size() + " states");
-				System.out.format("+----------------+-------------------+%n");
-				System.out.format(tableHeaderIter, iteration);
-				System.out.format("+----------------+---------+---------+%n");
-				System.out.format(leftAlignFormat, "Learning", currNrLearnQueries, currNrLearnSymbols);
-				System.out.format(leftAlignFormat, "Testing", currNrTestQueries, currNrTestSymbols);
-				System.out.format("+----------------+---------+---------+%n");
-				System.out.println();
-				System.out.format("+----------------+-------------------+%n");
-				System.out.format("| Total          | Queries | Tokens  |%n");
-				System.out.format("+----------------+---------+---------+%n");
-				System.out.format(leftAlignFormat, "Learning", totalNrLearnQueries, totalNrLearnSymbols);
-				System.out.format(leftAlignFormat, "Testing", totalNrTestQueries, totalNrTestSymbols);
-				System.out.format("+----------------+---------+---------+%n");
+				metrics.endRound(learner.getHypothesisModel().size(), ce == null ? -1 : ce.getInput().length());
+				writeMetrics(metrics);
 				
 				if(ce == null) {
 					// No counterexample found, stop learning
-					System.out.println("\nFinished learning!");
+					System.out.println("Finished learning!");
 					produceOutput(FINAL_MODEL_FILENAME, learner.getHypothesisModel(), alphabet, true);
+					metrics.endExperiment();
 					break;
 				} else {
 					// Counterexample found, rinse and repeat
-					System.out.println();
-					iteration++;
+					if (checkpoint != null) {
+						checkpoint.recordCounterexample(ce);
+					}
+					metrics.startPhase(ExperimentMetrics.Phase.LEARNING);
 					learner.refineHypothesis(ce);
 				}
 			}
@@ -251,6 +357,23 @@ public class BasicLearner {
 			String errorHypName = "hyp.before.crash.dot";
 			produceOutput(errorHypName, learner.getHypothesisModel(), alphabet, true);
 			throw e;
+		} finally {
+			if (hypothesisWriter != null) {
+				hypothesisWriter.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes the metrics as CSV and JSON, if metricsFilename is set
+	 * @param metrics
+	 * @throws IOException
+	 */
+	private static void writeMetrics(ExperimentMetrics metrics) throws IOException {
+		if (metricsFilename != null) {
+			String filename = metrics.getFirstRound() == 1 ? metricsFilename : metricsFilename + "-from-round" + metrics.getFirstRound();
+			metrics.writeCsv(new File(filename + ".csv"));
+			metrics.writeJson(new File(filename + ".json"));
 		}
 	}
 
@@ -272,7 +395,227 @@ public class BasicLearner {
 		) throws IOException {
 		Alphabet<String> learnlibAlphabet = new SimpleAlphabet<String>(alphabet);
 		LearningSetup learningSetup = new LearningSetup(sul, learningMethod, testingMethod, learnlibAlphabet);
-		runControlledExperiment(learningSetup.learner, learningSetup.eqOracle, learningSetup.nrSymbols, learningSetup.nrResets, learnlibAlphabet);
+		runControlledExperiment(learningSetup, learnlibAlphabet, newCheckpoint(learningMethod, testingMethod, learnlibAlphabet));
+	}
+
+	/**
+	 * More detailed example of running a learning experiment, which runs the membership queries in parallel on
+	 * a pool of SULs. Starts learning, and then loops testing, and if counterexamples are found, refining again.
+	 * Also prints some statistics about the experiment
+	 * @param sulFactory Creates the SULs, which should behave the same and not share any state
+	 * @param nrInstances The number of SULs to use in parallel
+	 * @param learningMethod One of the default learning methods from this class
+	 * @param testingMethod One of the default testing methods from this class
+	 * @param alphabet Input alphabet
+	 * @throws IOException
+	 */
+	public static void runControlledExperiment(
+			Supplier<? extends SUL<String,String>> sulFactory,
+			int nrInstances,
+			LearningMethod learningMethod,
+			TestingMethod testingMethod,
+			Collection<String> alphabet
+		) throws IOException {
+		Alphabet<String> learnlibAlphabet = new SimpleAlphabet<String>(alphabet);
+		LearningSetup learningSetup = new LearningSetup(sulFactory, nrInstances, learningMethod, testingMethod, learnlibAlphabet);
+		runControlledExperiment(learningSetup, learnlibAlphabet, newCheckpoint(learningMethod, testingMethod, learnlibAlphabet));
+	}
+
+	/**
+	 * Continues the controlled experiment of the checkpoint in checkpointFilename, with the learning and testing
+	 * method of that experiment. Set observationLogFilename to the log of that experiment, so that rebuilding the
+	 * learner does not need the SUL.
+	 * @param sul Direct access to SUL
+	 * @param alphabet Input alphabet, the same as for the experiment of the checkpoint
+	 * @throws IOException if the checkpoint cannot be read, or was made with another alphabet
+	 */
+	public static void resumeControlledExperiment(
+			SUL<String,String> sul,
+			Collection<String> alphabet
+		) throws IOException {
+		if (checkpointFilename == null) {
+			throw new IllegalStateException("Set checkpointFilename to resume an experiment");
+		}
+		ExperimentCheckpoint checkpoint = ExperimentCheckpoint.load(new File(checkpointFilename));
+		Alphabet<String> learnlibAlphabet = new SimpleAlphabet<String>(alphabet);
+		checkpoint.checkAlphabet(learnlibAlphabet);
+		if (observationLogFilename == null && !checkpoint.getCounterexamples().isEmpty()) {
+			System.err.println("Warning: resuming without observationLogFilename, so the queries for the "
+					+ checkpoint.getCounterexamples().size() + " counterexamples of the checkpoint are run on the SUL again");
+		}
+		LearningSetup learningSetup = new LearningSetup(sul, checkpoint.getLearningMethod(), checkpoint.getTestingMethod(), learnlibAlphabet);
+		runControlledExperiment(learningSetup, learnlibAlphabet, checkpoint);
+	}
+
+	/**
+	 * Races several configurations of a learning and testing method against each other, and keeps the model of
+	 * the first one which passes its test. Every configuration runs in its own thread on its own SUL, but they
+	 * share their observations (and the observation log, if observationLogFilename is set): a query which one
+	 * configuration has asked is answered from the observations for the others. As soon as one configuration has
+	 * finished, the others are stopped at their next query or test word, also if it is answered from the observations.
+	 * Intermediate hypotheses, metrics files and checkpoints are not written for a portfolio.
+	 * @param sulFactory Creates a SUL for every configuration, which should behave the same and not share any state
+	 * @param learningMethods The learning method of every configuration
+	 * @param testingMethods The testing method of every configuration, at the same position as its learning method
+	 * @param alphabet Input alphabet
+	 * @throws IOException if the result cannot be written
+	 */
+	public static void runPortfolioExperiment(
+			Supplier<? extends SUL<String,String>> sulFactory,
+			List<LearningMethod> learningMethods,
+			List<TestingMethod> testingMethods,
+			Collection<String> alphabet
+		) throws IOException {
+		if (learningMethods.isEmpty() || learningMethods.size() != testingMethods.size()) {
+			throw new IllegalArgumentException("Give a testing method for every learning method of the portfolio");
+		}
+		if (testingMethods.contains(TestingMethod.UserQueries)) {
+			throw new IllegalArgumentException("User queries cannot be used in a portfolio");
+		}
+		final Alphabet<String> learnlibAlphabet = new SimpleAlphabet<String>(alphabet);
+		int nrConfigurations = learningMethods.size();
+		ObservationCache<String,String> observationTree = LearningSetup.createObservationTree(true, learnlibAlphabet);
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		List<LearningSetup> setups = new ArrayList<>();
+		ExecutorService executor = Executors.newFixedThreadPool(nrConfigurations, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "portfolio configuration");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int i = 0; i < nrConfigurations; i++) {
+				SUL<String,String> sul = new CancellableSUL<>(sulFactory.get(), cancelled);
+				final LearningSetup setup = new LearningSetup(Collections.singletonList(sul), learningMethods.get(i),
+						testingMethods.get(i), learnlibAlphabet, observationTree, cancelled);
+				setups.add(setup);
+				final int configuration = i;
+				futures.add(completionService.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						learnUntilVerified(setup, learnlibAlphabet);
+						return configuration;
+					}
+				}));
+			}
+			// wait for the first configuration to finish, and then for the others to stop
+			int winner = -1;
+			RuntimeException failure = null;
+			String[] results = new String[nrConfigurations];
+			for (int i = 0; i < nrConfigurations; i++) {
+				Future<Integer> future;
+				try {
+					future = completionService.take();
+				} catch (InterruptedException e) {
+					cancelled.set(true);
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				}
+				int configuration = futures.indexOf(future);
+				try {
+					future.get();
+					results[configuration] = winner < 0 ? "finished first" : "finished later";
+					if (winner < 0) {
+						winner = configuration;
+						cancelled.set(true);
+					}
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof CancellationException) {
+						results[configuration] = "stopped";
+					} else {
+						// a configuration which fails (e.g. on non-determinism) does not stop the others
+						results[configuration] = "failed (" + e.getCause() + ")";
+						if (failure == null) {
+							failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+						}
+					}
+				} catch (InterruptedException e) {
+					cancelled.set(true);
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				}
+			}
+			if (winner < 0) {
+				throw failure;
+			}
+			for (int i = 0; i < nrConfigurations; i++) {
+				LearningSetup setup = setups.get(i);
+				System.out.println(learningMethods.get(i) + " with " + testingMethods.get(i) + ": " + results[i] + " after "
+						+ setup.metrics.getRounds().size() + " rounds, " + setup.nrResets.getCount() + " queries and "
+						+ setup.nrSymbols.getCount() + " symbols");
+			}
+			MealyMachine<?, String, ?, String> model = setups.get(winner).learner.getHypothesisModel();
+			System.out.println("Finished learning with " + learningMethods.get(winner) + " and " + testingMethods.get(winner)
+					+ ": " + model.size() + " states");
+			produceOutput(FINAL_MODEL_FILENAME, model, learnlibAlphabet, true);
+			setups.get(winner).printCacheStatistics();
+		} finally {
+			cancelled.set(true);
+			executor.shutdownNow();
+			for (LearningSetup setup : setups) {
+				setup.close();
+			}
+			if (observationTree instanceof PersistentObservationTree) {
+				((PersistentObservationTree) observationTree).close();
+			}
+		}
+	}
+
+	/**
+	 * Races every learning method against the others, with the same testing method, see runPortfolioExperiment
+	 */
+	public static void runPortfolioExperiment(
+			Supplier<? extends SUL<String,String>> sulFactory,
+			TestingMethod testingMethod,
+			Collection<String> alphabet
+		) throws IOException {
+		List<LearningMethod> learningMethods = Arrays.asList(LearningMethod.values());
+		runPortfolioExperiment(sulFactory, learningMethods, Collections.nCopies(learningMethods.size(), testingMethod), alphabet);
+	}
+
+	/**
+	 * Learn and test until the tester finds no counterexample, measuring every round in the metrics of the setup
+	 */
+	private static void learnUntilVerified(LearningSetup setup, Alphabet<String> alphabet) {
+		setup.metrics.startPhase(ExperimentMetrics.Phase.LEARNING);
+		setup.learner.startLearning();
+		while (true) {
+			setup.metrics.startPhase(ExperimentMetrics.Phase.TESTING);
+			DefaultQuery<String, Word<String>> ce = setup.eqOracle.findCounterExample(setup.learner.getHypothesisModel(), alphabet);
+			setup.metrics.endRound(setup.learner.getHypothesisModel().size(), ce == null ? -1 : ce.getInput().length());
+			if (ce == null) {
+				setup.metrics.endExperiment();
+				return;
+			}
+			setup.metrics.startPhase(ExperimentMetrics.Phase.LEARNING);
+			setup.learner.refineHypothesis(ce);
+		}
+	}
+
+	private static ExperimentCheckpoint newCheckpoint(LearningMethod learningMethod, TestingMethod testingMethod, Collection<String> alphabet) {
+		return checkpointFilename == null ? null : new ExperimentCheckpoint(new File(checkpointFilename), learningMethod, testingMethod, alphabet);
+	}
+
+	/**
+	 * Runs a controlled experiment with the given setup, prints the statistics and closes the setup
+	 */
+	private static void runControlledExperiment(LearningSetup learningSetup, Alphabet<String> alphabet, ExperimentCheckpoint checkpoint) throws IOException {
+		try {
+			if (checkpoint != null) {
+				checkpoint.useCounters(learningSetup.nrSymbols, learningSetup.nrResets);
+				// number the hypotheses and metrics after those of the earlier run, instead of overwriting them
+				learningSetup.metrics.setFirstRound(checkpoint.getNrRounds() + 1);
+			}
+			learningSetup.metrics.addListener(new ConsoleExperimentListener());
+			runControlledExperiment(learningSetup.learner, learningSetup.eqOracle, learningSetup.metrics, alphabet, checkpoint);
+			learningSetup.printCacheStatistics();
+		} finally {
+			learningSetup.close();
+		}
 	}
 
 	/**
@@ -302,29 +645,232 @@ public class BasicLearner {
 	 * Helper class to configure a learning and equivalence oracle. Tell it which learning and testing method you
 	 * want, and it produces the corresponding oracles (and counters for statistics) as attributes.
 	 */
-	public static class LearningSetup {
+	public static class LearningSetup implements Closeable {
 		public final EquivalenceOracle<MealyMachine<?, String, ?, String>, String, Word<String>> eqOracle;
 		public final LearningAlgorithm<MealyMachine<?, String, ?, String>, String, Word<String>> learner;
-		public final Counter nrSymbols, nrResets;
+		public final Counter nrSymbols, nrResets, nrCacheHits, nrCacheMisses, nrSavedResets, nrSavedSymbols;
+		public final ObservationCache<String,String> observationTree;
+		/** metrics for runControlledExperiment, which also record the latencies of the SUL */
+		public final ExperimentMetrics metrics;
+		private final ParallelSULOracle<String,String> parallelOracle;
+		private final ParallelEQOracle<String,String> parallelEqOracle;
+		private final CounterexampleShortener<String,String> shortener;
+		private final NonDeterminismResolver<String,String> resolver;
+		private final SnapshotCachingOracle<String,String,?> snapshotOracle;
+		private final PreviousModelEQOracle previousModelOracle;
+		/** whether the observation tree was created by this setup, and not shared with other setups */
+		private final boolean ownsObservationTree;
 
 		public LearningSetup(SUL<String,String> sul, LearningMethod learningMethod, TestingMethod testingMethod, Alphabet<String> alphabet) {
-			// Wrap the SUL in a detector for non-determinism
-			SUL<String,String> nonDetSul = new NonDeterminismCheckingSUL<String,String>(sul);
-			// Wrap the SUL in counters for symbols/resets, so that we can record some statistics
-			SymbolCounterSUL<String, String> symbolCounterSul = new SymbolCounterSUL<>("symbol counter", nonDetSul);
-			ResetCounterSUL<String, String> resetCounterSul = new ResetCounterSUL<>("reset counter", symbolCounterSul);
-			nrSymbols = symbolCounterSul.getStatisticalData();
-			nrResets = resetCounterSul.getStatisticalData();
+			this(Collections.singletonList(sul), learningMethod, testingMethod, alphabet, null, null);
+		}
+
+		/**
+		 * Setup which runs membership queries in parallel on a pool of SUL instances
+		 * @param sulFactory creates the SUL instances, which should behave the same and not share any state
+		 * @param nrInstances the number of SUL instances to use in parallel
+		 */
+		public LearningSetup(Supplier<? extends SUL<String,String>> sulFactory, int nrInstances, LearningMethod learningMethod, TestingMethod testingMethod, Alphabet<String> alphabet) {
+			this(createSULs(sulFactory, nrInstances), learningMethod, testingMethod, alphabet, null, null);
+		}
+
+		/**
+		 * @param sharedObservationTree the observations shared with other setups, which are used at the same time,
+		 * or null to create a tree for this setup
+		 * @param cancelled flag which stops the queries and tests of this setup when set, also those answered from
+		 * the observations, or null
+		 */
+		private LearningSetup(List<? extends SUL<String,String>> suls, LearningMethod learningMethod, TestingMethod testingMethod,
+				Alphabet<String> alphabet, ObservationCache<String,String> sharedObservationTree, AtomicBoolean cancelled) {
+			// All observations of the SUL, possibly including those of earlier experiments
+			ownsObservationTree = sharedObservationTree == null;
+			observationTree = ownsObservationTree ? createObservationTree(suls.size() > 1, alphabet) : sharedObservationTree;
+			nrSymbols = new Counter("symbol counter", "symbols");
+			nrResets = new Counter("reset counter", "resets");
+			nrCacheHits = new Counter("cache hits", "queries");
+			nrCacheMisses = new Counter("cache misses", "queries");
+			metrics = new ExperimentMetrics(nrSymbols, nrResets, nrCacheHits, nrCacheMisses);
+			resolver = nonDeterminism_maxRepetitions > 0
+					? new NonDeterminismResolver<String,String>(nonDeterminism_maxRepetitions, nonDeterminism_timeLimitMillis) : null;
+			List<SUL<String,String>> wrappedSuls = new ArrayList<>();
+			for (SUL<String,String> sul : suls) {
+				// Measure the latency of the SUL itself, without the wrappers
+				SUL<String,String> timedSul = new LatencyRecordingSUL<>(sul, metrics);
+				// Wrap the SUL in a detector for non-determinism
+				SUL<String,String> nonDetSul = new NonDeterminismCheckingSUL<String,String>(timedSul, observationTree, resolver);
+				// Wrap the SUL in counters for symbols/resets, so that we can record some statistics
+				wrappedSuls.add(new ConcurrentCounterSUL<>(nonDetSul, nrSymbols, nrResets));
+			}
 			// we should use the sul only through those wrappers
-			sul = resetCounterSul;
+			SUL<String,String> sul = wrappedSuls.get(0);
 			// Most testing/learning-algorithms want a membership-oracle instead of a SUL directly
-			MealyMembershipOracle<String,String> sulOracle = new SULOracle<>(sul);
+			MealyMembershipOracle<String,String> sulOracle;
+			if (wrappedSuls.size() == 1 && resolver == null && snapshotMemoryBudget > 0 && suls.get(0) instanceof SnapshotSUL
+					&& ((SnapshotSUL<String,String,?>) suls.get(0)).canSnapshot()) {
+				// continue from saved states; this skips the other wrappers, but the ObservationCacheOracle below still
+				// checks the outputs for non-determinism
+				snapshotOracle = createSnapshotOracle(new LatencyRecordingSnapshotSUL<>((SnapshotSUL<String,String,?>) suls.get(0), metrics),
+						nrSymbols, nrResets);
+				sulOracle = snapshotOracle;
+				parallelOracle = null;
+			} else if (wrappedSuls.size() == 1 && resolver == null) {
+				sulOracle = new SULOracle<>(sul);
+				parallelOracle = null;
+				snapshotOracle = null;
+			} else {
+				// also for a single SUL with a resolver, since this oracle runs queries with wrong outputs again
+				parallelOracle = new ParallelSULOracle<>(wrappedSuls);
+				sulOracle = parallelOracle;
+				snapshotOracle = null;
+			}
+			// Only run the longest queries of every batch, and derive the answers to their prefixes
+			PrefixSharingOracle<String,String> prefixSharingOracle = new PrefixSharingOracle<>(sulOracle);
+			nrSavedResets = prefixSharingOracle.getSavedResetsCounter();
+			nrSavedSymbols = prefixSharingOracle.getSavedSymbolsCounter();
+			sulOracle = prefixSharingOracle;
+			// This one answers repeated queries and prefixes of earlier queries from the observations, without the SUL
+			ObservationCacheOracle<String,String> cacheOracle = new ObservationCacheOracle<>(observationTree, sulOracle, nrCacheHits, nrCacheMisses);
+			cacheOracle.setCancelFlag(cancelled);
+			sulOracle = cacheOracle;
 
 			// Choosing an equivalence oracle
-			eqOracle = loadTester(testingMethod, sul, sulOracle);
+			EquivalenceOracle<MealyMachine<?, String, ?, String>, String, Word<String>> tester;
+			if ((wrappedSuls.size() > 1 || resolver != null) && testingMethod == TestingMethod.RandomWalk) {
+				// a random walk can be cut into words at its resets, which can be tested in parallel on the pool
+				// (and run again if their outputs were wrong)
+				parallelEqOracle = new ParallelEQOracle<>(wrappedSuls, new RandomWordGenerator<String>(
+						randomWalk_chanceOfResetting, randomWalk_numberOfSymbols, new Random(123456l)));
+				tester = parallelEqOracle;
+			} else if (testingMethod == TestingMethod.WMethod || testingMethod == TestingMethod.WpMethod) {
+				// generate the test suite lazily, and skip the test words whose outputs are already observed
+				parallelEqOracle = null;
+				StreamingEQOracle<String,String> streamingOracle = new StreamingEQOracle<>(new WMethodWordGenerator<String>(
+						w_wp_methods_maxDepth, testingMethod == TestingMethod.WpMethod), observationTree, sulOracle);
+				streamingOracle.setCancelFlag(cancelled);
+				tester = streamingOracle;
+			} else if (testingMethod == TestingMethod.RandomWpMethod) {
+				parallelEqOracle = null;
+				StreamingEQOracle<String,String> streamingOracle = new StreamingEQOracle<>(randomWpGenerator(), observationTree, sulOracle);
+				streamingOracle.setCancelFlag(cancelled);
+				tester = streamingOracle;
+			} else {
+				parallelEqOracle = null;
+				tester = loadTester(testingMethod, sul, sulOracle);
+			}
+			if (previousModelFilename != null) {
+				// first learn the states of the previous model which still exist, and only then look for new behaviour
+				previousModelOracle = new PreviousModelEQOracle(loadPreviousModel(), alphabet, sulOracle, tester);
+				tester = previousModelOracle;
+			} else {
+				previousModelOracle = null;
+			}
+			if (shortenCounterexamples) {
+				shortener = new CounterexampleShortener<>(tester, observationTree, sulOracle);
+				eqOracle = shortener;
+			} else {
+				shortener = null;
+				eqOracle = tester;
+			}
 
 			// Choosing a learner
-			learner = loadLearner(learningMethod, sulOracle, alphabet);
+			learner = loadLearner(learningMethod, sulOracle, alphabet, previousModelOracle == null
+					? Collections.<Word<String>>emptyList() : previousModelOracle.getSuffixes());
+		}
+
+		public void printCacheStatistics() {
+			System.out.println("Cache hits: " + nrCacheHits.getCount() + ", cache misses: " + nrCacheMisses.getCount());
+			System.out.println("Saved by prefix sharing: " + nrSavedResets.getCount() + " resets, " + nrSavedSymbols.getCount() + " symbols");
+			if (snapshotOracle != null) {
+				System.out.println("Saved by snapshots: " + snapshotOracle.getSavedSymbolsCounter().getCount() + " symbols, with "
+						+ snapshotOracle.getSnapshotCounter().getCount() + " snapshots and " + snapshotOracle.getRestoreCounter().getCount() + " restores");
+			}
+			if (observationTree instanceof SpillingObservationTree) {
+				SpillingObservationTree<?,?> spillingTree = (SpillingObservationTree<?,?>) observationTree;
+				System.out.println("Observation tree: " + spillingTree.size() + " nodes, of which " + spillingTree.getNrResidentNodes()
+						+ " in memory, after " + spillingTree.getNrSpills() + " spills and " + spillingTree.getNrLoads() + " loads");
+			}
+			if (previousModelOracle != null) {
+				System.out.println("Previous model: the SUL differs on " + previousModelOracle.getNrChangedWords() + " of its "
+						+ previousModelOracle.getNrTestWords() + " test words");
+			}
+			if (resolver != null) {
+				System.out.println(resolver.getStatistics());
+			}
+			if (shortener != null) {
+				System.out.println("Counterexamples shortened from " + shortener.getOriginalSymbolsCounter().getCount() + " to "
+						+ shortener.getShortenedSymbolsCounter().getCount() + " symbols, with " + shortener.getQueryCounter().getCount() + " queries");
+			}
+		}
+
+		private static HypothesisSnapshot loadPreviousModel() {
+			File file = new File(previousModelFilename);
+			try {
+				return previousModelFilename.endsWith(".dot") ? HypothesisSnapshot.readDot(file) : HypothesisSnapshot.read(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * @param concurrent whether the tree is used from many threads at once
+		 * @return the tree for all observations of the SUL, possibly including those of earlier experiments
+		 */
+		private static ObservationCache<String,String> createObservationTree(boolean concurrent, Alphabet<String> alphabet) {
+			if (observationLogFilename == null && concurrent) {
+				// a pool of SULs uses the tree from many threads at once
+				return new ConcurrentObservationTree<>(alphabet);
+			} else if (observationLogFilename == null && observationTree_maxResidentNodes > 0) {
+				try {
+					return new SpillingObservationTree<>(alphabet, observationTree_maxResidentNodes, File.createTempFile("observations", ".spill"));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			} else if (observationLogFilename == null) {
+				return new ObservationTree<>(alphabet);
+			} else {
+				try {
+					return new PersistentObservationTree(new File(observationLogFilename), alphabet);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+
+		private static <S> SnapshotCachingOracle<String,String,S> createSnapshotOracle(SnapshotSUL<String,String,S> sul, Counter nrSymbols, Counter nrResets) {
+			return new SnapshotCachingOracle<>(sul, snapshotMemoryBudget, SnapshotCachingOracle.DEFAULT_MIN_DEPTH, nrSymbols, nrResets);
+		}
+
+		private static List<SUL<String,String>> createSULs(Supplier<? extends SUL<String,String>> sulFactory, int nrInstances) {
+			List<SUL<String,String>> suls = new ArrayList<>();
+			for (int i = 0; i < nrInstances; i++) {
+				suls.add(sulFactory.get());
+			}
+			return suls;
+		}
+
+		/**
+		 * Closes the observation log or spill file, if observations are stored in one and not shared with other
+		 * setups, and stops the threads for parallel queries
+		 */
+		@Override
+		public void close() throws IOException {
+			if (parallelOracle != null) {
+				parallelOracle.close();
+			}
+			if (snapshotOracle != null) {
+				snapshotOracle.clear();
+			}
+			if (parallelEqOracle != null) {
+				parallelEqOracle.close();
+			}
+			if (!ownsObservationTree) {
+				return;
+			}
+			if (observationTree instanceof PersistentObservationTree) {
+				((PersistentObservationTree) observationTree).close();
+			} else if (observationTree instanceof SpillingObservationTree) {
+				((SpillingObservationTree<?,?>) observationTree).close();
+			}
 		}
 	}
 }
@@ -0,0 +1,237 @@
+package basiclearner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.impl.SimpleAlphabet;
+import de.learnlib.api.SUL;
+import de.learnlib.oracles.DefaultQuery;
+
+/**
+ * Benchmarks for the hot paths of the learning setup: inserting into the observation trees, the overhead of
+ * NonDeterminismCheckingSUL, and complete learning runs for every combination of learning and testing method,
+ * on the ExampleSUL and on larger generated machines.
+ * Every benchmark is run a few times to warm up the JVM, and then reports the median of the measured runs.
+ * Allocation is measured for the benchmark thread only, so it excludes the threads of a pool of SULs.
+ *
+ * Run the main method, optionally with the number of measured runs as argument.
+ */
+public class Benchmark {
+	private static final int WARMUP_RUNS = 3;
+	private static final com.sun.management.ThreadMXBean THREADS =
+			ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+			? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+
+	public static void main(String[] args) {
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		benchmarkTrees(runs);
+		benchmarkNonDeterminismChecking(runs);
+		benchmarkLearning("ExampleSUL", new Supplier<SUL<String,String>>() {
+			@Override
+			public SUL<String,String> get() {
+				return new ExampleSUL();
+			}
+		}, Arrays.asList("a", "b", "c"), runs);
+		for (final RandomMealySUL sul : new RandomMealySUL[] {
+				new RandomMealySUL(RandomMealySUL.Structure.RANDOM, 100, 10, 4, 1),
+				new RandomMealySUL(RandomMealySUL.Structure.RANDOM, 1000, 20, 4, 1),
+				new RandomMealySUL(RandomMealySUL.Structure.COMBINATION_LOCK, 20, 5, 3, 1)}) {
+			benchmarkLearning(sul.toString(), new Supplier<SUL<String,String>>() {
+				@Override
+				public SUL<String,String> get() {
+					return sul.copy();
+				}
+			}, sul.getInputs(), runs);
+		}
+	}
+
+	/**
+	 * Inserting random traces in ObservationTree and ConcurrentObservationTree
+	 */
+	public static void benchmarkTrees(int runs) {
+		System.out.println("Observation tree insertion (100k random traces of length 20)");
+		printHeader("tree", "alphabet", "ns/symbol", "B alloc/symbol", "nodes");
+		for (int alphabetSize : new int[] {3, 10, 50}) {
+			final List<String> alphabet = new ArrayList<>();
+			for (int i = 0; i < alphabetSize; i++) {
+				alphabet.add("i" + i);
+			}
+			final List<List<String>> inputs = new ArrayList<>(), outputs = new ArrayList<>();
+			randomTraces(alphabet, 100000, 20, inputs, outputs);
+			for (final boolean concurrent : new boolean[] {false, true}) {
+				final ObservationCache<?,?>[] tree = new ObservationCache<?,?>[1];
+				Measurement measurement = measure(runs, new Runnable() {
+					@Override
+					public void run() {
+						ObservationCache<String,String> newTree = concurrent
+								? new ConcurrentObservationTree<String,String>(alphabet) : new ObservationTree<String,String>(alphabet);
+						for (int i = 0; i < inputs.size(); i++) {
+							newTree.addObservation(inputs.get(i), outputs.get(i));
+						}
+						tree[0] = newTree;
+					}
+				});
+				long nrSymbols = 20L * inputs.size();
+				printRow(concurrent ? "Concurrent" : "ObservationTree", alphabetSize,
+						measurement.nanos / nrSymbols, measurement.allocatedBytes / nrSymbols, tree[0].size());
+			}
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Running random queries on ExampleSUL, with and without NonDeterminismCheckingSUL
+	 */
+	public static void benchmarkNonDeterminismChecking(int runs) {
+		System.out.println("NonDeterminismCheckingSUL overhead (100k random queries of length 20 on ExampleSUL)");
+		printHeader("SUL", "", "ns/symbol", "B alloc/symbol", "");
+		final List<List<String>> inputs = new ArrayList<>();
+		randomTraces(Arrays.asList("a", "b", "c"), 100000, 20, inputs, new ArrayList<List<String>>());
+		for (final boolean checking : new boolean[] {false, true}) {
+			Measurement measurement = measure(runs, new Runnable() {
+				@Override
+				public void run() {
+					SUL<String,String> sul = new ExampleSUL();
+					if (checking) {
+						sul = new NonDeterminismCheckingSUL<>(sul);
+					}
+					for (List<String> query : inputs) {
+						sul.pre();
+						for (String input : query) {
+							sul.step(input);
+						}
+						sul.post();
+					}
+				}
+			});
+			long nrSymbols = 20L * inputs.size();
+			printRow(checking ? "checking" : "plain", "", measurement.nanos / nrSymbols, measurement.allocatedBytes / nrSymbols, "");
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Learning a SUL with every combination of learning and testing method (except user queries), with a LearningSetup
+	 * @param name the name of the SUL to print
+	 * @param sulFactory creates a fresh SUL for every run
+	 * @param inputs the input alphabet
+	 * @param runs the number of measured runs
+	 */
+	public static void benchmarkLearning(String name, final Supplier<? extends SUL<String,String>> sulFactory, Collection<String> inputs, int runs) {
+		System.out.println("Learning " + name);
+		printHeader("learner/tester", "states", "queries", "symbols", "wall ms", "MB alloc", "cache hits");
+		final Alphabet<String> alphabet = new SimpleAlphabet<>(inputs);
+		for (final BasicLearner.LearningMethod learningMethod : BasicLearner.LearningMethod.values()) {
+			for (final BasicLearner.TestingMethod testingMethod : BasicLearner.TestingMethod.values()) {
+				if (testingMethod == BasicLearner.TestingMethod.UserQueries) {
+					continue;
+				}
+				final long[] statistics = new long[4];
+				Measurement measurement = measure(runs, new Runnable() {
+					@Override
+					public void run() {
+						BasicLearner.LearningSetup setup = new BasicLearner.LearningSetup(sulFactory.get(), learningMethod, testingMethod, alphabet);
+						try {
+							setup.learner.startLearning();
+							DefaultQuery<String, Word<String>> counterexample;
+							while ((counterexample = setup.eqOracle.findCounterExample(setup.learner.getHypothesisModel(), alphabet)) != null) {
+								setup.learner.refineHypothesis(counterexample);
+							}
+							MealyMachine<?, String, ?, String> model = setup.learner.getHypothesisModel();
+							statistics[0] = model.size();
+							statistics[1] = setup.nrResets.getCount();
+							statistics[2] = setup.nrSymbols.getCount();
+							statistics[3] = setup.nrCacheHits.getCount();
+						} finally {
+							try {
+								setup.close();
+							} catch (IOException e) {
+								throw new UncheckedIOException(e);
+							}
+						}
+					}
+				});
+				printRow(learningMethod + "/" + testingMethod, statistics[0], statistics[1], statistics[2],
+						measurement.nanos / 1000000, measurement.allocatedBytes / (1024 * 1024), statistics[3]);
+			}
+		}
+		System.out.println();
+	}
+
+	private static class Measurement {
+		final long nanos, allocatedBytes;
+
+		Measurement(long nanos, long allocatedBytes) {
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+	}
+
+	/**
+	 * @return the median wall time and allocation of the measured runs, after warming up
+	 */
+	private static Measurement measure(int runs, Runnable benchmark) {
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			benchmark.run();
+		}
+		long[] nanos = new long[runs], allocatedBytes = new long[runs];
+		for (int i = 0; i < runs; i++) {
+			System.gc();
+			long startAllocated = allocatedBytes();
+			long start = System.nanoTime();
+			benchmark.run();
+			nanos[i] = System.nanoTime() - start;
+			allocatedBytes[i] = allocatedBytes() - startAllocated;
+		}
+		Arrays.sort(nanos);
+		Arrays.sort(allocatedBytes);
+		return new Measurement(nanos[runs / 2], allocatedBytes[runs / 2]);
+	}
+
+	private static long allocatedBytes() {
+		return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Random traces, with outputs which are a deterministic function of the inputs
+	 */
+	private static void randomTraces(List<String> alphabet, int nrTraces, int length, List<List<String>> inputs, List<List<String>> outputs) {
+		Random random = new Random(123456l);
+		for (int trace = 0; trace < nrTraces; trace++) {
+			List<String> traceInputs = new ArrayList<>(length), traceOutputs = new ArrayList<>(length);
+			int state = 0;
+			for (int i = 0; i < length; i++) {
+				int input = random.nextInt(alphabet.size());
+				traceInputs.add(alphabet.get(input));
+				traceOutputs.add("o" + (state * 31 + input) % 3);
+				state = (state * 7 + input) % 101;
+			}
+			inputs.add(traceInputs);
+			outputs.add(traceOutputs);
+		}
+	}
+
+	private static void printHeader(String... columns) {
+		printRow((Object[]) columns);
+		printRow(Collections.nCopies(columns.length, "----------").toArray());
+	}
+
+	private static void printRow(Object... values) {
+		StringBuilder row = new StringBuilder(String.format("%-28s", values[0]));
+		for (int i = 1; i < values.length; i++) {
+			row.append(String.format(" %14s", values[i]));
+		}
+		System.out.println(row);
+	}
+}
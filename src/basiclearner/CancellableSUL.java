@@ -0,0 +1,58 @@
+package basiclearner;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.learnlib.api.SUL;
+import de.learnlib.api.SULException;
+
+/**
+ * SUL-wrapper which stops an experiment from another thread: once the flag is set, every reset and step throws
+ * a CancellationException, which ends the learner or tester using the SUL at its next query. The flag may be
+ * shared by all SULs of an experiment. Queries which are answered from the observations do not reach the SUL, so
+ * the oracles which answer them (ObservationCacheOracle, StreamingEQOracle) check the same flag.
+ *
+ * @param <I>
+ * @param <O>
+ */
+public class CancellableSUL<I,O> implements SUL<I,O> {
+	private final SUL<I,O> sul;
+	private final AtomicBoolean cancelled;
+
+	/**
+	 * @param sul the SUL to wrap
+	 * @param cancelled the flag which cancels the queries when set
+	 */
+	public CancellableSUL(SUL<I,O> sul, AtomicBoolean cancelled) {
+		this.sul = sul;
+		this.cancelled = cancelled;
+	}
+
+	@Override
+	public void pre() {
+		checkCancelled(cancelled);
+		sul.pre();
+	}
+
+	@Override
+	public void post() {
+		// always release the SUL, also for a cancelled query
+		sul.post();
+	}
+
+	@Override
+	public O step(I input) throws SULException {
+		checkCancelled(cancelled);
+		return sul.step(input);
+	}
+
+	/**
+	 * @param cancelled the flag to check, or null
+	 * @throws CancellationException if the flag is set
+	 */
+	static void checkCancelled(AtomicBoolean cancelled) {
+		if (cancelled != null && cancelled.get()) {
+			throw new CancellationException("The experiment was cancelled");
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package basiclearner;
+
+import de.learnlib.api.SUL;
+import de.learnlib.api.SULException;
+import de.learnlib.statistics.Counter;
+
+/**
+ * SUL-wrapper which counts symbols and resets, like SymbolCounterSUL and ResetCounterSUL, but which can
+ * share its counters with other instances used from different threads (e.g. a pool of SULs).
+ *
+ * @param <I>
+ * @param <O>
+ */
+public class ConcurrentCounterSUL<I,O> implements SUL<I,O> {
+	private final SUL<I,O> sul;
+	private final Counter nrSymbols, nrResets;
+
+	public ConcurrentCounterSUL(SUL<I,O> sul) {
+		this(sul, new Counter("symbol counter", "symbols"), new Counter("reset counter", "resets"));
+	}
+
+	/**
+	 * @param sul the SUL to wrap
+	 * @param nrSymbols counter for the inputs, which may be shared with other instances
+	 * @param nrResets counter for the resets, which may be shared with other instances
+	 */
+	public ConcurrentCounterSUL(SUL<I,O> sul, Counter nrSymbols, Counter nrResets) {
+		this.sul = sul;
+		this.nrSymbols = nrSymbols;
+		this.nrResets = nrResets;
+	}
+
+	@Override
+	public void pre() {
+		synchronized (nrResets) {
+			nrResets.increment();
+		}
+		sul.pre();
+	}
+
+	@Override
+	public void post() {
+		sul.post();
+	}
+
+	@Override
+	public O step(I input) throws SULException {
+		synchronized (nrSymbols) {
+			nrSymbols.increment();
+		}
+		return sul.step(input);
+	}
+
+	public Counter getSymbolCounter() {
+		return nrSymbols;
+	}
+
+	public Counter getResetCounter() {
+		return nrResets;
+	}
+}
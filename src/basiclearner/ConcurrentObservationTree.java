@@ -0,0 +1,221 @@
+package basiclearner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.automatalib.words.Word;
+
+/**
+ * Observation tree which many threads can use at the same time without locking. Every transition is added with a
+ * single compare-and-set, so that of two threads adding the same input with different outputs, exactly one wins
+ * and the other gets a CacheInconsistencyException: non-determinism is detected as if the observations were
+ * added one after another. The input alphabet has to be known beforehand.
+ *
+ * @param <I> the input type of the observations
+ * @param <O> the output type of the observations
+ */
+public class ConcurrentObservationTree<I,O> implements ObservationCache<I,O> {
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<Node, AtomicReferenceArray> CHILDREN =
+			AtomicReferenceFieldUpdater.newUpdater(Node.class, AtomicReferenceArray.class, "children");
+
+	/** read-only after construction, so it can be read without locking */
+	private final Map<I, Integer> inputIds = new HashMap<>();
+	private final List<I> inputSymbols = new ArrayList<>();
+	private final Node<O> root = new Node<>(null);
+	private final LongAdder nrNodes = new LongAdder();
+
+	/**
+	 * @param inputAlphabet all inputs which can be observed
+	 */
+	public ConcurrentObservationTree(Collection<? extends I> inputAlphabet) {
+		for (I input : inputAlphabet) {
+			if (!inputIds.containsKey(input)) {
+				inputIds.put(input, inputSymbols.size());
+				inputSymbols.add(input);
+			}
+		}
+		nrNodes.increment();
+	}
+
+	private static class Node<O> {
+		final O output;
+		/** created on the first child, by compare-and-set */
+		volatile AtomicReferenceArray<Node<O>> children;
+
+		Node(O output) {
+			this.output = output;
+		}
+	}
+
+	@Override
+	public void addObservation(Word<I> inputs, Word<O> outputs) throws CacheInconsistencyException {
+		addObservation(inputs.asList(), outputs.asList());
+	}
+
+	@Override
+	public void addObservation(List<I> inputs, List<O> outputs) throws CacheInconsistencyException {
+		if (inputs.size() != outputs.size()) {
+			throw new RuntimeException("Input and output words should have the same length:\n" + inputs + "\n" + outputs);
+		}
+		Node<O> node = root;
+		for (int i = 0; i < inputs.size(); i++) {
+			int inputId = getInputId(inputs.get(i));
+			AtomicReferenceArray<Node<O>> children = getOrCreateChildren(node);
+			Node<O> child = children.get(inputId);
+			if (child == null) {
+				Node<O> newChild = new Node<>(outputs.get(i));
+				if (children.compareAndSet(inputId, null, newChild)) {
+					nrNodes.increment();
+					child = newChild;
+				} else {
+					// another thread added this input first
+					child = children.get(inputId);
+				}
+			}
+			if (!Objects.equals(child.output, outputs.get(i))) {
+				// input is inconsistent with previous observations: the old output agrees up to this symbol
+				List<O> oldOutputChain = new ArrayList<>(outputs.subList(0, i));
+				oldOutputChain.add(child.output);
+				throw new CacheInconsistencyException(Word.fromList(inputs), Word.fromList(oldOutputChain), Word.fromList(outputs));
+			}
+			node = child;
+		}
+	}
+
+	@Override
+	public void replaceObservation(List<I> inputs, List<O> outputs) {
+		if (inputs.size() != outputs.size()) {
+			throw new RuntimeException("Input and output words should have the same length:\n" + inputs + "\n" + outputs);
+		}
+		Node<O> node = root;
+		for (int i = 0; i < inputs.size(); i++) {
+			int inputId = getInputId(inputs.get(i));
+			AtomicReferenceArray<Node<O>> children = getOrCreateChildren(node);
+			Node<O> child = children.get(inputId);
+			while (child == null || !Objects.equals(child.output, outputs.get(i))) {
+				Node<O> newChild = new Node<>(outputs.get(i));
+				if (children.compareAndSet(inputId, child, newChild)) {
+					nrNodes.add(1 - countNodes(child));
+					child = newChild;
+				} else {
+					child = children.get(inputId);
+				}
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * @return the number of nodes in the subtree of the given node (0 for null)
+	 */
+	private int countNodes(Node<O> node) {
+		int count = 0;
+		Deque<Node<O>> stack = new ArrayDeque<>();
+		if (node != null) {
+			stack.push(node);
+		}
+		while (!stack.isEmpty()) {
+			Node<O> current = stack.pop();
+			count++;
+			AtomicReferenceArray<Node<O>> children = current.children;
+			if (children != null) {
+				for (int input = 0; input < children.length(); input++) {
+					if (children.get(input) != null) {
+						stack.push(children.get(input));
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public Word<O> getOutput(Word<I> inputs) {
+		List<O> outputChain = new ArrayList<>(inputs.size());
+		Node<O> node = root;
+		for (I input : inputs) {
+			Integer inputId = inputIds.get(input);
+			AtomicReferenceArray<Node<O>> children = node.children;
+			if (inputId == null || children == null || children.get(inputId) == null) {
+				return null;
+			}
+			node = children.get(inputId);
+			outputChain.add(node.output);
+		}
+		return Word.fromList(outputChain);
+	}
+
+	@Override
+	public int size() {
+		return nrNodes.intValue();
+	}
+
+	/**
+	 * Visits the traces present when the visit starts, and possibly some which are added concurrently
+	 */
+	@Override
+	public void forEachTrace(TraceVisitor<I,O> visitor) {
+		List<I> inputChain = new ArrayList<>();
+		List<O> outputChain = new ArrayList<>();
+		Deque<Node<O>> nodeStack = new ArrayDeque<>();
+		Deque<Integer> inputStack = new ArrayDeque<>(), depthStack = new ArrayDeque<>();
+		nodeStack.push(root);
+		inputStack.push(-1);
+		depthStack.push(0);
+		while (!nodeStack.isEmpty()) {
+			Node<O> node = nodeStack.pop();
+			int inputId = inputStack.pop(), depth = depthStack.pop();
+			inputChain.subList(depth, inputChain.size()).clear();
+			outputChain.subList(depth, outputChain.size()).clear();
+			if (node != root) {
+				inputChain.add(inputSymbols.get(inputId));
+				outputChain.add(node.output);
+				depth++;
+			}
+			boolean isLeaf = true;
+			AtomicReferenceArray<Node<O>> children = node.children;
+			if (children != null) {
+				for (int childInput = 0; childInput < children.length(); childInput++) {
+					Node<O> child = children.get(childInput);
+					if (child != null) {
+						nodeStack.push(child);
+						inputStack.push(childInput);
+						depthStack.push(depth);
+						isLeaf = false;
+					}
+				}
+			}
+			if (isLeaf && node != root) {
+				visitor.visitTrace(inputChain, outputChain);
+			}
+		}
+	}
+
+	private int getInputId(I input) {
+		Integer inputId = inputIds.get(input);
+		if (inputId == null) {
+			throw new IllegalArgumentException("Input " + input + " is not in the alphabet of the observation tree");
+		}
+		return inputId;
+	}
+
+	@SuppressWarnings("unchecked")
+	private AtomicReferenceArray<Node<O>> getOrCreateChildren(Node<O> node) {
+		AtomicReferenceArray<Node<O>> children = node.children;
+		if (children == null) {
+			CHILDREN.compareAndSet(node, null, new AtomicReferenceArray<Node<O>>(inputSymbols.size()));
+			children = node.children;
+		}
+		return children;
+	}
+}
@@ -0,0 +1,55 @@
+package basiclearner;
+
+import java.util.Calendar;
+
+import basiclearner.ExperimentMetrics.Phase;
+import basiclearner.ExperimentMetrics.Round;
+
+/**
+ * Prints the metrics of every round as a table, and the latencies of the SUL when the experiment has finished
+ */
+public class ConsoleExperimentListener implements ExperimentListener {
+	private static final String LINE = "+----------------+---------+---------+---------+%n",
+			ROW = "| %-14s | %-7d | %-7d | %-7d |%n";
+
+	@Override
+	public void roundCompleted(Round round, ExperimentMetrics metrics) {
+		System.out.println("Iteration " + round.round + ": " + Calendar.getInstance().getTime());
+		System.out.println("Hypothesis size: " + round.hypothesisSize + " states");
+		System.out.format(LINE);
+		System.out.format("| Iteration %-4d | Queries | Tokens  | Time ms |%n", round.round);
+		System.out.format(LINE);
+		for (Phase phase : new Phase[] {Phase.LEARNING, Phase.TESTING}) {
+			System.out.format(ROW, name(phase), round.getQueries(phase), round.getSymbols(phase), round.getNanos(phase) / 1000000);
+		}
+		System.out.format(LINE);
+		System.out.println();
+		System.out.format(LINE);
+		System.out.format("| Total          | Queries | Tokens  | Time ms |%n");
+		System.out.format(LINE);
+		for (Phase phase : new Phase[] {Phase.LEARNING, Phase.TESTING}) {
+			System.out.format(ROW, name(phase), metrics.getTotalQueries(phase), metrics.getTotalSymbols(phase),
+					metrics.getTotalNanos(phase) / 1000000);
+		}
+		System.out.format(LINE);
+		System.out.format("Time in SUL: %d ms, %.1f queries/s, cache hit rate %.1f%%%n",
+				round.sulNanos / 1000000, round.getQueriesPerSecond(), 100 * round.getCacheHitRate());
+		System.out.println();
+	}
+
+	@Override
+	public void experimentCompleted(ExperimentMetrics metrics) {
+		print("Step latency", metrics.getStepLatencies());
+		print("Reset latency", metrics.getResetLatencies());
+	}
+
+	private static void print(String name, LatencyHistogram histogram) {
+		System.out.format("%s: %d measured, mean %d us, p50 <= %d us, p99 <= %d us, max %d us%n", name, histogram.getCount(),
+				histogram.getMeanNanos() / 1000, histogram.getPercentileNanos(50) / 1000,
+				histogram.getPercentileNanos(99) / 1000, histogram.getMaxNanos() / 1000);
+	}
+
+	private static String name(Phase phase) {
+		return phase == Phase.LEARNING ? "Learning" : "Testing";
+	}
+}
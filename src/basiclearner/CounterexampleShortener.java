@@ -0,0 +1,174 @@
+package basiclearner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import de.learnlib.api.EquivalenceOracle;
+import de.learnlib.api.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.oracles.DefaultQuery;
+import de.learnlib.statistics.Counter;
+
+/**
+ * Equivalence oracle which shortens the counterexamples of another equivalence oracle before they are given to
+ * the learner, since long counterexamples (e.g. from a random walk) make refinement expensive. The counterexample
+ * is cut off after its first difference with the hypothesis, and then repeatedly replaced by the shortest
+ * candidate which is still a counterexample. The candidates are the counterexample without a loop through a
+ * hypothesis state, and the counterexample with a prefix replaced by the (shortest) access sequence of the state
+ * it reaches in the hypothesis. Candidates are first tried with the observations only, and only then with
+ * membership queries, of which at most maxQueries are used per counterexample.
+ *
+ * @param <I>
+ * @param <O>
+ */
+public class CounterexampleShortener<I,O> implements EquivalenceOracle<MealyMachine<?, I, ?, O>, I, Word<O>> {
+	public static final int DEFAULT_MAX_QUERIES = 100;
+
+	private final EquivalenceOracle<MealyMachine<?, I, ?, O>, I, Word<O>> delegate;
+	private final ObservationCache<I,O> observations;
+	private final MealyMembershipOracle<I,O> oracle;
+	private final int maxQueries;
+	private final Counter nrOriginalSymbols = new Counter("counterexample symbols before shortening", "symbols");
+	private final Counter nrShortenedSymbols = new Counter("counterexample symbols after shortening", "symbols");
+	private final Counter nrQueries = new Counter("shortening queries", "queries");
+
+	/**
+	 * @param delegate finds the counterexamples
+	 * @param observations the observations of the SUL so far
+	 * @param oracle answers the candidates which are not in the observations
+	 */
+	public CounterexampleShortener(EquivalenceOracle<MealyMachine<?, I, ?, O>, I, Word<O>> delegate,
+			ObservationCache<I,O> observations, MealyMembershipOracle<I,O> oracle) {
+		this(delegate, observations, oracle, DEFAULT_MAX_QUERIES);
+	}
+
+	/**
+	 * @param delegate finds the counterexamples
+	 * @param observations the observations of the SUL so far
+	 * @param oracle answers the candidates which are not in the observations
+	 * @param maxQueries the maximum number of membership queries for shortening one counterexample
+	 */
+	public CounterexampleShortener(EquivalenceOracle<MealyMachine<?, I, ?, O>, I, Word<O>> delegate,
+			ObservationCache<I,O> observations, MealyMembershipOracle<I,O> oracle, int maxQueries) {
+		this.delegate = delegate;
+		this.observations = observations;
+		this.oracle = oracle;
+		this.maxQueries = maxQueries;
+	}
+
+	@Override
+	public DefaultQuery<I, Word<O>> findCounterExample(MealyMachine<?, I, ?, O> hypothesis, Collection<? extends I> inputs) {
+		DefaultQuery<I, Word<O>> counterexample = delegate.findCounterExample(hypothesis, inputs);
+		if (counterexample == null) {
+			return null;
+		}
+		int[] queriesLeft = {maxQueries};
+		Word<O> output = counterexample.getPrefix().isEmpty() ? counterexample.getOutput() : getOutput(counterexample.getInput(), queriesLeft);
+		DefaultQuery<I, Word<O>> shortest = output == null ? null
+				: StreamingEQOracle.findDifference(hypothesis, counterexample.getInput(), output);
+		if (shortest == null) {
+			// not a counterexample for a complete run of the SUL, leave it to the learner
+			return counterexample;
+		}
+		HypothesisStructure<I> structure = new HypothesisStructure<>(hypothesis, inputs);
+		DefaultQuery<I, Word<O>> shorter;
+		while ((shorter = findShorter(hypothesis, structure, shortest.getInput(), queriesLeft)) != null) {
+			shortest = shorter;
+		}
+		nrOriginalSymbols.increment(counterexample.getInput().length());
+		nrShortenedSymbols.increment(shortest.getInput().length());
+		return shortest;
+	}
+
+	/**
+	 * @return the shortest candidate which is still a counterexample, or null if there is none
+	 */
+	private DefaultQuery<I, Word<O>> findShorter(MealyMachine<?, I, ?, O> hypothesis, HypothesisStructure<I> structure,
+			Word<I> word, int[] queriesLeft) {
+		List<Word<I>> candidates = getCandidates(structure, word);
+		// first try what is known, then ask the SUL
+		for (boolean useQueries : new boolean[] {false, true}) {
+			for (Word<I> candidate : candidates) {
+				Word<O> output = useQueries ? getOutput(candidate, queriesLeft) : observations.getOutput(candidate);
+				DefaultQuery<I, Word<O>> counterexample = output == null ? null : StreamingEQOracle.findDifference(hypothesis, candidate, output);
+				if (counterexample != null) {
+					return counterexample;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the candidates shorter than the given word, shortest first
+	 */
+	private List<Word<I>> getCandidates(HypothesisStructure<I> structure, Word<I> word) {
+		int[] states = new int[word.length() + 1];
+		for (int i = 0; i < word.length(); i++) {
+			states[i + 1] = structure.getSuccessor(states[i], structure.getInputIndex(word.getSymbol(i)));
+		}
+		List<Word<I>> candidates = new ArrayList<>();
+		// replace a prefix by the access sequence of the state it reaches
+		for (int i = 1; i <= word.length(); i++) {
+			Word<I> accessSequence = structure.getAccessSequence(states[i]);
+			if (accessSequence.length() < i) {
+				candidates.add(accessSequence.concat(word.subWord(i)));
+			}
+		}
+		// remove the longest loop starting at every position
+		Map<Integer, Integer> lastVisits = new HashMap<>();
+		for (int i = 0; i <= word.length(); i++) {
+			lastVisits.put(states[i], i);
+		}
+		for (int i = 0; i < word.length(); i++) {
+			int lastVisit = lastVisits.get(states[i]);
+			if (lastVisit > i) {
+				WordBuilder<I> candidate = new WordBuilder<>(word.length() - (lastVisit - i));
+				candidate.append(word.prefix(i)).append(word.subWord(lastVisit));
+				candidates.add(candidate.toWord());
+			}
+		}
+		Collections.sort(candidates, new Comparator<Word<I>>() {
+			@Override
+			public int compare(Word<I> word1, Word<I> word2) {
+				return Integer.compare(word1.length(), word2.length());
+			}
+		});
+		return candidates;
+	}
+
+	/**
+	 * @return the output of the SUL for the given word, from the observations or else from a membership query, or
+	 * null if it is not known and no queries are left
+	 */
+	private Word<O> getOutput(Word<I> word, int[] queriesLeft) {
+		Word<O> output = observations.getOutput(word);
+		if (output == null && queriesLeft[0] > 0) {
+			queriesLeft[0]--;
+			nrQueries.increment();
+			DefaultQuery<I, Word<O>> query = new DefaultQuery<>(word);
+			oracle.processQueries(Collections.singletonList(query));
+			output = query.getOutput();
+		}
+		return output;
+	}
+
+	public Counter getOriginalSymbolsCounter() {
+		return nrOriginalSymbols;
+	}
+
+	public Counter getShortenedSymbolsCounter() {
+		return nrShortenedSymbols;
+	}
+
+	public Counter getQueryCounter() {
+		return nrQueries;
+	}
+}
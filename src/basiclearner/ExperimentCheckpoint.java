@@ -0,0 +1,254 @@
+package basiclearner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import net.automatalib.words.Word;
+import de.learnlib.oracles.DefaultQuery;
+import de.learnlib.statistics.Counter;
+
+/**
+ * Checkpoint of a controlled experiment: the learning and testing method, the input alphabet, the symbol and reset
+ * counters, and all counterexamples found so far. The learners cannot store their own data structures, but they are deterministic:
+ * starting to learn again and refining with the same counterexamples rebuilds the same observation table or
+ * discrimination tree. With an observation log (observationLogFilename in BasicLearner), all queries for that are
+ * answered from the log, so resuming costs no SUL time.
+ *
+ * The checkpoint is a text file, which is replaced atomically whenever a counterexample is recorded, so a crash
+ * leaves either the old or the new checkpoint. Symbols are separated by tabs, with backslash, tab and line breaks
+ * in symbols escaped by a backslash.
+ */
+public class ExperimentCheckpoint {
+	private static final String HEADER = "basiclearner checkpoint 2", HEADER_WITHOUT_ALPHABET = "basiclearner checkpoint 1";
+
+	private final File file;
+	private final BasicLearner.LearningMethod learningMethod;
+	private final BasicLearner.TestingMethod testingMethod;
+	/** null for a checkpoint of version 1, which did not store it, until it is resumed */
+	private List<String> alphabet;
+	private final List<DefaultQuery<String, Word<String>>> counterexamples = new ArrayList<>();
+	private long savedSymbols = 0, savedResets = 0;
+	private Counter nrSymbols, nrResets;
+
+	/**
+	 * A new checkpoint, which is not saved until the first counterexample is recorded
+	 * @param file
+	 * @param learningMethod
+	 * @param testingMethod
+	 * @param alphabet the input alphabet, in the order given to the learner
+	 */
+	public ExperimentCheckpoint(File file, BasicLearner.LearningMethod learningMethod, BasicLearner.TestingMethod testingMethod, Collection<String> alphabet) {
+		this.file = file;
+		this.learningMethod = learningMethod;
+		this.testingMethod = testingMethod;
+		this.alphabet = alphabet == null ? null : new ArrayList<>(alphabet);
+	}
+
+	/**
+	 * Read a checkpoint
+	 * @param file
+	 * @return the checkpoint
+	 * @throws IOException if the file cannot be read or is not a checkpoint
+	 */
+	public static ExperimentCheckpoint load(File file) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String header = reader.readLine();
+			if (!HEADER.equals(header) && !HEADER_WITHOUT_ALPHABET.equals(header)) {
+				throw new IOException(file + " is not a checkpoint");
+			}
+			ExperimentCheckpoint checkpoint;
+			try {
+				BasicLearner.LearningMethod learningMethod = BasicLearner.LearningMethod.valueOf(readValue(reader, "learningMethod", file));
+				BasicLearner.TestingMethod testingMethod = BasicLearner.TestingMethod.valueOf(readValue(reader, "testingMethod", file));
+				List<String> alphabet = null;
+				if (HEADER.equals(header)) {
+					alphabet = splitSymbols(readValue(reader, "alphabet", file), file, true);
+				}
+				checkpoint = new ExperimentCheckpoint(file, learningMethod, testingMethod, alphabet);
+				checkpoint.savedSymbols = Long.parseLong(readValue(reader, "symbols", file));
+				checkpoint.savedResets = Long.parseLong(readValue(reader, "resets", file));
+				String line;
+				while ((line = reader.readLine()) != null) {
+					checkpoint.counterexamples.add(parseCounterexample(line, file, alphabet != null));
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Corrupt checkpoint " + file, e);
+			}
+			return checkpoint;
+		}
+	}
+
+	private static String readValue(BufferedReader reader, String key, File file) throws IOException {
+		String line = reader.readLine();
+		if (line == null || !line.startsWith(key + "\t")) {
+			throw new IOException("Corrupt checkpoint " + file + ", expected " + key);
+		}
+		return line.substring(key.length() + 1);
+	}
+
+	/**
+	 * A counterexample is stored as: prefix length, suffix length, the inputs, and the outputs for the suffix
+	 */
+	private static DefaultQuery<String, Word<String>> parseCounterexample(String line, File file, boolean escaped) throws IOException {
+		List<String> fields = splitSymbols(line, file, escaped);
+		if (fields.size() < 3 || !fields.get(0).equals("counterexample")) {
+			throw new IOException("Corrupt checkpoint " + file + ": " + line);
+		}
+		int prefixLength = Integer.parseInt(fields.get(1)), suffixLength = Integer.parseInt(fields.get(2));
+		if (fields.size() != 3 + prefixLength + 2 * suffixLength) {
+			throw new IOException("Corrupt checkpoint " + file + ": " + line);
+		}
+		Word<String> prefix = Word.fromList(fields.subList(3, 3 + prefixLength));
+		Word<String> suffix = Word.fromList(fields.subList(3 + prefixLength, 3 + prefixLength + suffixLength));
+		Word<String> output = Word.fromList(fields.subList(3 + prefixLength + suffixLength, fields.size()));
+		return new DefaultQuery<String, Word<String>>(prefix, suffix, output);
+	}
+
+	/**
+	 * Split a line at its tabs, and unescape the fields (which version 1 did not escape)
+	 */
+	private static List<String> splitSymbols(String line, File file, boolean escaped) throws IOException {
+		if (!escaped) {
+			return Arrays.asList(line.split("\t", -1));
+		}
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '\\') {
+				if (++i == line.length()) {
+					throw new IOException("Corrupt checkpoint " + file + ": " + line);
+				}
+				switch (line.charAt(i)) {
+				case '\\': field.append('\\'); break;
+				case 't': field.append('\t'); break;
+				case 'n': field.append('\n'); break;
+				case 'r': field.append('\r'); break;
+				default: throw new IOException("Corrupt checkpoint " + file + ": " + line);
+				}
+			} else if (c == '\t') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	private static void appendSymbol(StringBuilder line, String symbol) {
+		for (int i = 0; i < symbol.length(); i++) {
+			char c = symbol.charAt(i);
+			switch (c) {
+			case '\\': line.append("\\\\"); break;
+			case '\t': line.append("\\t"); break;
+			case '\n': line.append("\\n"); break;
+			case '\r': line.append("\\r"); break;
+			default: line.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Check that an experiment is resumed with the alphabet of the checkpoint: with another alphabet (or another
+	 * order of it), replaying the counterexamples would not rebuild the same learner. A checkpoint without an
+	 * alphabet takes the given one.
+	 * @param alphabet the input alphabet of the resumed experiment
+	 * @throws IOException if the alphabet differs from the one in the checkpoint
+	 */
+	public void checkAlphabet(Collection<String> alphabet) throws IOException {
+		if (this.alphabet != null && !this.alphabet.equals(new ArrayList<>(alphabet))) {
+			throw new IOException("Checkpoint " + file + " was made with alphabet " + this.alphabet + ", not " + alphabet);
+		}
+		this.alphabet = new ArrayList<>(alphabet);
+	}
+
+	/**
+	 * Use the given counters for the checkpoints from now on. For a loaded checkpoint, the counts of the checkpoint
+	 * are added to them first, so that the counts continue from the checkpoint.
+	 * @param nrSymbols
+	 * @param nrResets
+	 */
+	public void useCounters(Counter nrSymbols, Counter nrResets) {
+		this.nrSymbols = nrSymbols;
+		this.nrResets = nrResets;
+		nrSymbols.increment(savedSymbols);
+		nrResets.increment(savedResets);
+		savedSymbols = 0;
+		savedResets = 0;
+	}
+
+	/**
+	 * Add a counterexample, and save the checkpoint
+	 * @param counterexample
+	 * @throws IOException
+	 */
+	public void recordCounterexample(DefaultQuery<String, Word<String>> counterexample) throws IOException {
+		counterexamples.add(counterexample);
+		save();
+	}
+
+	private void save() throws IOException {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		try (PrintWriter writer = new PrintWriter(tmpFile, "UTF-8")) {
+			writer.print((alphabet == null ? HEADER_WITHOUT_ALPHABET : HEADER) + "\n");
+			writer.print("learningMethod\t" + learningMethod + "\n");
+			writer.print("testingMethod\t" + testingMethod + "\n");
+			if (alphabet != null) {
+				StringBuilder line = new StringBuilder("alphabet");
+				for (String symbol : alphabet) {
+					appendSymbol(line.append('\t'), symbol);
+				}
+				writer.print(line.append('\n'));
+			}
+			writer.print("symbols\t" + (nrSymbols == null ? savedSymbols : nrSymbols.getCount()) + "\n");
+			writer.print("resets\t" + (nrResets == null ? savedResets : nrResets.getCount()) + "\n");
+			for (DefaultQuery<String, Word<String>> counterexample : counterexamples) {
+				StringBuilder line = new StringBuilder("counterexample\t" + counterexample.getPrefix().length() + "\t" + counterexample.getSuffix().length());
+				for (String symbol : counterexample.getPrefix().concat(counterexample.getSuffix(), counterexample.getOutput())) {
+					appendSymbol(line.append('\t'), symbol);
+				}
+				writer.print(line.append('\n'));
+			}
+			if (writer.checkError()) {
+				throw new IOException("Could not write checkpoint " + tmpFile);
+			}
+		}
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public BasicLearner.LearningMethod getLearningMethod() {
+		return learningMethod;
+	}
+
+	public BasicLearner.TestingMethod getTestingMethod() {
+		return testingMethod;
+	}
+
+	/**
+	 * @return the number of rounds of the experiment so far: every round but the last ends with a counterexample
+	 */
+	public int getNrRounds() {
+		return counterexamples.size();
+	}
+
+	/**
+	 * @return the counterexamples, in the order in which they were found
+	 */
+	public List<DefaultQuery<String, Word<String>>> getCounterexamples() {
+		return Collections.unmodifiableList(counterexamples);
+	}
+}
@@ -0,0 +1,19 @@
+package basiclearner;
+
+/**
+ * Receives the metrics of a learning experiment while it runs, for example to print or store them.
+ */
+public interface ExperimentListener {
+	/**
+	 * Called after every round: learning a hypothesis and testing it
+	 * @param round the metrics of the round which just completed
+	 * @param metrics all metrics of the experiment so far
+	 */
+	void roundCompleted(ExperimentMetrics.Round round, ExperimentMetrics metrics);
+
+	/**
+	 * Called once when learning has finished, after the last round
+	 * @param metrics all metrics of the experiment
+	 */
+	void experimentCompleted(ExperimentMetrics metrics);
+}
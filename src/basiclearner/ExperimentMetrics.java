@@ -0,0 +1,357 @@
+package basiclearner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import de.learnlib.statistics.Counter;
+
+/**
+ * Metrics of a learning experiment: for every round the wall time, queries and symbols of every phase, the cache
+ * hits and misses, the time spent in the SUL and the size of the hypothesis, and histograms of the step and reset
+ * latencies of the SUL. The query and symbol counts are differences between snapshots of the counters at the start
+ * and end of a phase, so they are exact however the phases are interleaved.
+ *
+ * The experiment calls startPhase and endPhase around learning, testing and writing output, and endRound when a
+ * hypothesis has been tested. Listeners are notified after every round, and the metrics can be written as CSV
+ * (one line per round) or JSON (rounds and histograms).
+ */
+public class ExperimentMetrics implements SULLatencyListener {
+	/**
+	 * The phases of a round: learning (or refining) a hypothesis, testing it, and writing it to a file
+	 */
+	public enum Phase { LEARNING, TESTING, OUTPUT }
+
+	private final Counter nrSymbols, nrResets, nrCacheHits, nrCacheMisses;
+	private final LatencyHistogram stepLatencies = new LatencyHistogram(), resetLatencies = new LatencyHistogram();
+	private final List<Round> rounds = new ArrayList<>();
+	private final List<ExperimentListener> listeners = new ArrayList<>();
+	private final long startNanos = System.nanoTime();
+	/** the number of the first round, larger than 1 for a resumed experiment */
+	private int firstRound = 1;
+
+	private Phase currentPhase = null;
+	private long phaseStartNanos, phaseStartQueries, phaseStartSymbols;
+	private long[] roundNanos = new long[Phase.values().length], roundQueries = new long[Phase.values().length],
+			roundSymbols = new long[Phase.values().length];
+	private long roundStartHits, roundStartMisses, roundStartSULNanos;
+
+	/**
+	 * @param nrSymbols counter for the symbols sent to the SUL
+	 * @param nrResets counter for the resets of the SUL, i.e. the queries
+	 * @param nrCacheHits counter for the queries answered from a cache, or null if there is no cache
+	 * @param nrCacheMisses counter for the queries not answered from a cache, or null if there is no cache
+	 */
+	public ExperimentMetrics(Counter nrSymbols, Counter nrResets, Counter nrCacheHits, Counter nrCacheMisses) {
+		this.nrSymbols = nrSymbols;
+		this.nrResets = nrResets;
+		this.nrCacheHits = nrCacheHits;
+		this.nrCacheMisses = nrCacheMisses;
+	}
+
+	/**
+	 * Metrics of one round: learning a hypothesis and testing it
+	 */
+	public static class Round {
+		public final int round, hypothesisSize;
+		/** the length of the counterexample found, or -1 if none was found (the last round) */
+		public final int counterexampleLength;
+		/** time since the start of the experiment, at the end of this round */
+		public final long elapsedNanos;
+		public final long cacheHits, cacheMisses;
+		/** time spent in steps and resets of the SUL, summed over all SULs of a pool */
+		public final long sulNanos;
+		private final long[] nanos, queries, symbols;
+
+		Round(int round, int hypothesisSize, int counterexampleLength, long elapsedNanos, long cacheHits,
+				long cacheMisses, long sulNanos, long[] nanos, long[] queries, long[] symbols) {
+			this.round = round;
+			this.hypothesisSize = hypothesisSize;
+			this.counterexampleLength = counterexampleLength;
+			this.elapsedNanos = elapsedNanos;
+			this.cacheHits = cacheHits;
+			this.cacheMisses = cacheMisses;
+			this.sulNanos = sulNanos;
+			this.nanos = nanos;
+			this.queries = queries;
+			this.symbols = symbols;
+		}
+
+		public long getNanos(Phase phase) {
+			return nanos[phase.ordinal()];
+		}
+
+		public long getQueries(Phase phase) {
+			return queries[phase.ordinal()];
+		}
+
+		public long getSymbols(Phase phase) {
+			return symbols[phase.ordinal()];
+		}
+
+		public long getNanos() {
+			return sum(nanos);
+		}
+
+		public long getQueries() {
+			return sum(queries);
+		}
+
+		public long getSymbols() {
+			return sum(symbols);
+		}
+
+		/**
+		 * @return the queries sent to the SUL per second of wall time in this round
+		 */
+		public double getQueriesPerSecond() {
+			return getNanos() == 0 ? 0 : getQueries() * 1e9 / getNanos();
+		}
+
+		/**
+		 * @return the fraction of the queries in this round which were answered from the cache
+		 */
+		public double getCacheHitRate() {
+			return cacheHits + cacheMisses == 0 ? 0 : (double) cacheHits / (cacheHits + cacheMisses);
+		}
+	}
+
+	public void addListener(ExperimentListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void stepCompleted(long nanos) {
+		stepLatencies.record(nanos);
+	}
+
+	@Override
+	public void resetCompleted(long nanos) {
+		resetLatencies.record(nanos);
+	}
+
+	/**
+	 * Start measuring a phase, ending the current one if there is one
+	 * @param phase
+	 */
+	public void startPhase(Phase phase) {
+		if (currentPhase != null) {
+			endPhase();
+		}
+		currentPhase = phase;
+		phaseStartNanos = System.nanoTime();
+		phaseStartQueries = getCount(nrResets);
+		phaseStartSymbols = getCount(nrSymbols);
+	}
+
+	/**
+	 * Stop measuring the current phase, and add its metrics to the current round
+	 */
+	public void endPhase() {
+		if (currentPhase == null) {
+			throw new IllegalStateException("No phase was started");
+		}
+		int phase = currentPhase.ordinal();
+		roundNanos[phase] += System.nanoTime() - phaseStartNanos;
+		roundQueries[phase] += getCount(nrResets) - phaseStartQueries;
+		roundSymbols[phase] += getCount(nrSymbols) - phaseStartSymbols;
+		currentPhase = null;
+	}
+
+	/**
+	 * End the current round (and its current phase), and notify the listeners
+	 * @param hypothesisSize the number of states of the hypothesis of this round
+	 * @param counterexampleLength the length of the counterexample found for the hypothesis, or -1 if none was found
+	 * @return the metrics of the round
+	 */
+	public Round endRound(int hypothesisSize, int counterexampleLength) {
+		if (currentPhase != null) {
+			endPhase();
+		}
+		long hits = getCount(nrCacheHits), misses = getCount(nrCacheMisses), sulNanos = getSULNanos();
+		Round round = new Round(getNextRound(), hypothesisSize, counterexampleLength, System.nanoTime() - startNanos,
+				hits - roundStartHits, misses - roundStartMisses, sulNanos - roundStartSULNanos,
+				roundNanos, roundQueries, roundSymbols);
+		rounds.add(round);
+		roundNanos = new long[roundNanos.length];
+		roundQueries = new long[roundQueries.length];
+		roundSymbols = new long[roundSymbols.length];
+		roundStartHits = hits;
+		roundStartMisses = misses;
+		roundStartSULNanos = sulNanos;
+		for (ExperimentListener listener : listeners) {
+			listener.roundCompleted(round, this);
+		}
+		return round;
+	}
+
+	/**
+	 * Continue the numbering of the rounds of an earlier run of the experiment
+	 * @param firstRound the number of the first round measured by these metrics
+	 */
+	public void setFirstRound(int firstRound) {
+		this.firstRound = firstRound;
+	}
+
+	public int getFirstRound() {
+		return firstRound;
+	}
+
+	/**
+	 * @return the number of the current round
+	 */
+	public int getNextRound() {
+		return firstRound + rounds.size();
+	}
+
+	/**
+	 * Notify the listeners that the experiment has finished
+	 */
+	public void endExperiment() {
+		for (ExperimentListener listener : listeners) {
+			listener.experimentCompleted(this);
+		}
+	}
+
+	public List<Round> getRounds() {
+		return Collections.unmodifiableList(rounds);
+	}
+
+	public long getTotalNanos(Phase phase) {
+		long total = 0;
+		for (Round round : rounds) {
+			total += round.getNanos(phase);
+		}
+		return total;
+	}
+
+	public long getTotalQueries(Phase phase) {
+		long total = 0;
+		for (Round round : rounds) {
+			total += round.getQueries(phase);
+		}
+		return total;
+	}
+
+	public long getTotalSymbols(Phase phase) {
+		long total = 0;
+		for (Round round : rounds) {
+			total += round.getSymbols(phase);
+		}
+		return total;
+	}
+
+	public LatencyHistogram getStepLatencies() {
+		return stepLatencies;
+	}
+
+	public LatencyHistogram getResetLatencies() {
+		return resetLatencies;
+	}
+
+	/**
+	 * Write one line per round, with a header
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeCsv(File file) throws IOException {
+		try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+			writer.print("round,elapsed_ms,hypothesis_states");
+			for (Phase phase : Phase.values()) {
+				String name = phase.name().toLowerCase(Locale.ROOT);
+				writer.print("," + name + "_ms," + name + "_queries," + name + "_symbols");
+			}
+			writer.println(",sul_ms,cache_hits,cache_misses,cache_hit_rate,queries_per_second,counterexample_length");
+			for (Round round : rounds) {
+				writer.print(round.round + "," + millis(round.elapsedNanos) + "," + round.hypothesisSize);
+				for (Phase phase : Phase.values()) {
+					writer.print("," + millis(round.getNanos(phase)) + "," + round.getQueries(phase) + "," + round.getSymbols(phase));
+				}
+				writer.println("," + millis(round.sulNanos) + "," + round.cacheHits + "," + round.cacheMisses + ","
+						+ format(round.getCacheHitRate()) + "," + format(round.getQueriesPerSecond()) + "," + round.counterexampleLength);
+			}
+		}
+	}
+
+	/**
+	 * Write all rounds and the latency histograms as a JSON object
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeJson(File file) throws IOException {
+		try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+			writer.println("{");
+			writer.println("  \"rounds\": [");
+			for (int i = 0; i < rounds.size(); i++) {
+				Round round = rounds.get(i);
+				writer.print("    {\"round\": " + round.round + ", \"elapsedMillis\": " + millis(round.elapsedNanos)
+						+ ", \"hypothesisStates\": " + round.hypothesisSize);
+				for (Phase phase : Phase.values()) {
+					writer.print(", \"" + phase.name().toLowerCase(Locale.ROOT) + "\": {\"millis\": " + millis(round.getNanos(phase))
+							+ ", \"queries\": " + round.getQueries(phase) + ", \"symbols\": " + round.getSymbols(phase) + "}");
+				}
+				writer.print(", \"sulMillis\": " + millis(round.sulNanos) + ", \"cacheHits\": " + round.cacheHits
+						+ ", \"cacheMisses\": " + round.cacheMisses + ", \"cacheHitRate\": " + format(round.getCacheHitRate())
+						+ ", \"queriesPerSecond\": " + format(round.getQueriesPerSecond())
+						+ ", \"counterexampleLength\": " + round.counterexampleLength + "}");
+				writer.println(i < rounds.size() - 1 ? "," : "");
+			}
+			writer.println("  ],");
+			writer.println("  \"stepLatency\": " + toJson(stepLatencies) + ",");
+			writer.println("  \"resetLatency\": " + toJson(resetLatencies));
+			writer.println("}");
+		}
+	}
+
+	private static String toJson(LatencyHistogram histogram) {
+		StringBuilder json = new StringBuilder("{\"count\": " + histogram.getCount()
+				+ ", \"meanNanos\": " + histogram.getMeanNanos()
+				+ ", \"p50Nanos\": " + histogram.getPercentileNanos(50)
+				+ ", \"p90Nanos\": " + histogram.getPercentileNanos(90)
+				+ ", \"p99Nanos\": " + histogram.getPercentileNanos(99)
+				+ ", \"maxNanos\": " + histogram.getMaxNanos()
+				+ ", \"buckets\": [");
+		// bucket i counts durations from 2^i nanoseconds, leave out the empty buckets at the end
+		int nrBuckets = LatencyHistogram.NR_BUCKETS;
+		while (nrBuckets > 0 && histogram.getBucketCount(nrBuckets - 1) == 0) {
+			nrBuckets--;
+		}
+		for (int bucket = 0; bucket < nrBuckets; bucket++) {
+			json.append(bucket == 0 ? "" : ", ").append(histogram.getBucketCount(bucket));
+		}
+		return json.append("]}").toString();
+	}
+
+	private long getSULNanos() {
+		return stepLatencies.getTotalNanos() + resetLatencies.getTotalNanos();
+	}
+
+	private static long getCount(Counter counter) {
+		if (counter == null) {
+			return 0;
+		}
+		synchronized (counter) {
+			return counter.getCount();
+		}
+	}
+
+	private static long sum(long[] values) {
+		long sum = 0;
+		for (long value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	private static long millis(long nanos) {
+		return nanos / 1000000;
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+}
@@ -0,0 +1,325 @@
+package basiclearner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.automatalib.automata.transout.MealyMachine;
+
+/**
+ * Immutable copy of a hypothesis as a transition table, which is cheap to take while learning and can be written
+ * by another thread while the learner changes its hypothesis. States are numbered in breadth-first order from the
+ * initial state 0, and only reachable states are copied.
+ *
+ * The table format has a line per transition: state, input, output and successor, separated by tabs (so symbols
+ * should not contain tabs or newlines). It is much faster to write than a DOT-file with a PDF, and can be read back.
+ * DOT-files of Mealy machines, as written by produceOutput in BasicLearner or by writeDot, can be read as well.
+ */
+public class HypothesisSnapshot {
+	/** a node name in a dot-file, possibly quoted */
+	private static final String DOT_ID = "(\"(?:[^\"\\\\]|\\\\.)*\"|[^\\s\\[;]+)";
+	private static final Pattern DOT_EDGE = Pattern.compile("\\s*" + DOT_ID + "\\s*->\\s*" + DOT_ID + "\\s*(\\[.*\\])?\\s*;?\\s*"),
+			DOT_NODE = Pattern.compile("\\s*" + DOT_ID + "\\s*\\[.*\\]\\s*;?\\s*"),
+			DOT_LABEL = Pattern.compile("label\\s*=\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+	private final List<String> inputs, outputs;
+	private final int nrStates;
+	/** successors[state * inputs.size() + input] and outputIds[state * inputs.size() + input] */
+	private final int[] successors, outputIds;
+
+	private HypothesisSnapshot(List<String> inputs, List<String> outputs, int nrStates, int[] successors, int[] outputIds) {
+		this.inputs = inputs;
+		this.outputs = outputs;
+		this.nrStates = nrStates;
+		this.successors = successors;
+		this.outputIds = outputIds;
+	}
+
+	/**
+	 * @param hypothesis a complete hypothesis
+	 * @param inputs the inputs of the hypothesis
+	 * @return a copy of the reachable part of the hypothesis
+	 */
+	public static HypothesisSnapshot of(MealyMachine<?, String, ?, String> hypothesis, Collection<String> inputs) {
+		return copy(hypothesis, new ArrayList<>(inputs));
+	}
+
+	private static <S> HypothesisSnapshot copy(MealyMachine<S, String, ?, String> hypothesis, List<String> inputs) {
+		Map<S, Integer> stateIds = new HashMap<>();
+		List<S> states = new ArrayList<>();
+		Map<String, Integer> outputIds = new HashMap<>();
+		List<String> outputs = new ArrayList<>();
+		stateIds.put(hypothesis.getInitialState(), 0);
+		states.add(hypothesis.getInitialState());
+		int nrInputs = inputs.size();
+		int[] successorTable = new int[16 * nrInputs], outputTable = new int[16 * nrInputs];
+		for (int state = 0; state < states.size(); state++) {
+			if ((state + 1) * nrInputs > successorTable.length) {
+				successorTable = Arrays.copyOf(successorTable, 2 * successorTable.length);
+				outputTable = Arrays.copyOf(outputTable, successorTable.length);
+			}
+			for (int input = 0; input < nrInputs; input++) {
+				S successor = hypothesis.getSuccessor(states.get(state), inputs.get(input));
+				Integer successorId = stateIds.get(successor);
+				if (successorId == null) {
+					successorId = states.size();
+					stateIds.put(successor, successorId);
+					states.add(successor);
+				}
+				String output = hypothesis.getOutput(states.get(state), inputs.get(input));
+				Integer outputId = outputIds.get(output);
+				if (outputId == null) {
+					outputId = outputs.size();
+					outputIds.put(output, outputId);
+					outputs.add(output);
+				}
+				successorTable[state * nrInputs + input] = successorId;
+				outputTable[state * nrInputs + input] = outputId;
+			}
+		}
+		return new HypothesisSnapshot(Collections.unmodifiableList(inputs), Collections.unmodifiableList(outputs), states.size(),
+				Arrays.copyOf(successorTable, states.size() * nrInputs), Arrays.copyOf(outputTable, states.size() * nrInputs));
+	}
+
+	public int getNrStates() {
+		return nrStates;
+	}
+
+	public List<String> getInputs() {
+		return inputs;
+	}
+
+	/**
+	 * @return the successor of the given state for the input with the given index
+	 */
+	public int getSuccessor(int state, int input) {
+		return successors[state * inputs.size() + input];
+	}
+
+	/**
+	 * @return the output of the given state for the input with the given index
+	 */
+	public String getOutput(int state, int input) {
+		return outputs.get(outputIds[state * inputs.size() + input]);
+	}
+
+	/**
+	 * Write the snapshot in the table format
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+			for (int state = 0; state < nrStates; state++) {
+				for (int input = 0; input < inputs.size(); input++) {
+					writer.print(state + "\t" + inputs.get(input) + "\t" + getOutput(state, input) + "\t" + getSuccessor(state, input) + "\n");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the snapshot as a dot-file, like produceOutput in BasicLearner (but without a PDF)
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeDot(File file) throws IOException {
+		try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+			writer.print("digraph g {\n\n");
+			for (int state = 0; state < nrStates; state++) {
+				writer.print("\ts" + state + " [shape=\"circle\" label=\"" + state + "\"];\n");
+			}
+			for (int state = 0; state < nrStates; state++) {
+				for (int input = 0; input < inputs.size(); input++) {
+					writer.print("\ts" + state + " -> s" + getSuccessor(state, input) + " [label=\""
+							+ escape(inputs.get(input)) + " / " + escape(getOutput(state, input)) + "\"];\n");
+				}
+			}
+			writer.print("\n__start0 [label=\"\" shape=\"none\" width=\"0\" height=\"0\"];\n__start0 -> s0;\n\n}\n");
+		}
+	}
+
+	/**
+	 * Read a snapshot in the table format
+	 * @param file
+	 * @return the snapshot
+	 * @throws IOException if the file cannot be read or is not in the table format
+	 */
+	public static HypothesisSnapshot read(File file) throws IOException {
+		List<String> inputs = new ArrayList<>(), outputs = new ArrayList<>();
+		Map<String, Integer> inputIds = new HashMap<>(), outputIds = new HashMap<>();
+		List<int[]> transitions = new ArrayList<>();
+		int nrStates = 0;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] fields = line.split("\t", -1);
+				if (fields.length != 4) {
+					throw new IOException("Not a transition of a hypothesis in " + file + ": " + line);
+				}
+				int[] transition = new int[4];
+				try {
+					transition[0] = Integer.parseInt(fields[0]);
+					transition[3] = Integer.parseInt(fields[3]);
+				} catch (NumberFormatException e) {
+					throw new IOException("Not a transition of a hypothesis in " + file + ": " + line, e);
+				}
+				transition[1] = intern(fields[1], inputIds, inputs);
+				transition[2] = intern(fields[2], outputIds, outputs);
+				transitions.add(transition);
+				nrStates = Math.max(nrStates, Math.max(transition[0], transition[3]) + 1);
+			}
+		}
+		int[] successors = new int[nrStates * inputs.size()], outputTable = new int[nrStates * inputs.size()];
+		boolean[] defined = new boolean[successors.length];
+		for (int[] transition : transitions) {
+			int index = transition[0] * inputs.size() + transition[1];
+			successors[index] = transition[3];
+			outputTable[index] = transition[2];
+			defined[index] = true;
+		}
+		for (int index = 0; index < defined.length; index++) {
+			if (!defined[index]) {
+				throw new IOException("The hypothesis in " + file + " is not complete");
+			}
+		}
+		return new HypothesisSnapshot(Collections.unmodifiableList(inputs), Collections.unmodifiableList(outputs), nrStates, successors, outputTable);
+	}
+
+	/**
+	 * Read a Mealy machine from a dot-file, with transitions labelled "input / output". The initial state is the
+	 * target of the edge from the __start node, or else the first state in the file. Only the states which are
+	 * reachable from it are read, and they are numbered in breadth-first order.
+	 * @param file
+	 * @return the snapshot
+	 * @throws IOException if the file cannot be read or does not contain a complete Mealy machine
+	 */
+	public static HypothesisSnapshot readDot(File file) throws IOException {
+		List<String> inputs = new ArrayList<>(), outputs = new ArrayList<>(), stateNames = new ArrayList<>();
+		Map<String, Integer> inputIds = new HashMap<>(), outputIds = new HashMap<>(), stateIds = new HashMap<>();
+		List<int[]> transitions = new ArrayList<>();
+		String initialState = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Matcher edge = DOT_EDGE.matcher(line);
+				if (edge.matches()) {
+					String source = unquote(edge.group(1)), target = unquote(edge.group(2));
+					if (source.startsWith("__start")) {
+						initialState = target;
+						continue;
+					}
+					Matcher label = DOT_LABEL.matcher(edge.group(3) == null ? "" : edge.group(3));
+					int separator = label.find() ? label.group(1).indexOf(" / ") : -1;
+					if (separator < 0) {
+						throw new IOException("Not a transition of a Mealy machine in " + file + ": " + line);
+					}
+					int[] transition = new int[4];
+					transition[0] = intern(source, stateIds, stateNames);
+					transition[1] = intern(unescape(label.group(1).substring(0, separator)), inputIds, inputs);
+					transition[2] = intern(unescape(label.group(1).substring(separator + 3)), outputIds, outputs);
+					transition[3] = intern(target, stateIds, stateNames);
+					transitions.add(transition);
+					continue;
+				}
+				Matcher node = DOT_NODE.matcher(line);
+				if (node.matches() && !line.trim().startsWith("__start") && !line.trim().matches("(graph|node|edge)\\b.*")) {
+					intern(unquote(node.group(1)), stateIds, stateNames);
+				}
+			}
+		}
+		if (stateNames.isEmpty()) {
+			throw new IOException("No states in " + file);
+		}
+		int nrInputs = inputs.size();
+		int[] fileSuccessors = new int[stateNames.size() * nrInputs], fileOutputs = new int[fileSuccessors.length];
+		boolean[] defined = new boolean[fileSuccessors.length];
+		for (int[] transition : transitions) {
+			int index = transition[0] * nrInputs + transition[1];
+			if (defined[index] && (fileSuccessors[index] != transition[3] || fileOutputs[index] != transition[2])) {
+				throw new IOException("The Mealy machine in " + file + " is not deterministic in state " + stateNames.get(transition[0]));
+			}
+			fileSuccessors[index] = transition[3];
+			fileOutputs[index] = transition[2];
+			defined[index] = true;
+		}
+		// number the reachable states in breadth-first order, as for a copy of a hypothesis
+		Integer initialId = initialState == null ? Integer.valueOf(0) : stateIds.get(initialState);
+		if (initialId == null) {
+			throw new IOException("The initial state " + initialState + " of " + file + " has no transitions");
+		}
+		int[] newIds = new int[stateNames.size()];
+		Arrays.fill(newIds, -1);
+		List<Integer> order = new ArrayList<>();
+		newIds[initialId] = 0;
+		order.add(initialId);
+		for (int i = 0; i < order.size(); i++) {
+			for (int input = 0; input < nrInputs; input++) {
+				int index = order.get(i) * nrInputs + input;
+				if (!defined[index]) {
+					throw new IOException("The Mealy machine in " + file + " is not complete: state " + stateNames.get(order.get(i))
+							+ " has no transition for " + inputs.get(input));
+				}
+				if (newIds[fileSuccessors[index]] < 0) {
+					newIds[fileSuccessors[index]] = order.size();
+					order.add(fileSuccessors[index]);
+				}
+			}
+		}
+		int[] successors = new int[order.size() * nrInputs], outputTable = new int[successors.length];
+		for (int state = 0; state < order.size(); state++) {
+			for (int input = 0; input < nrInputs; input++) {
+				int index = order.get(state) * nrInputs + input;
+				successors[state * nrInputs + input] = newIds[fileSuccessors[index]];
+				outputTable[state * nrInputs + input] = fileOutputs[index];
+			}
+		}
+		return new HypothesisSnapshot(Collections.unmodifiableList(inputs), Collections.unmodifiableList(outputs), order.size(), successors, outputTable);
+	}
+
+	private static int intern(String symbol, Map<String, Integer> ids, List<String> symbols) {
+		Integer id = ids.get(symbol);
+		if (id == null) {
+			id = symbols.size();
+			ids.put(symbol, id);
+			symbols.add(symbol);
+		}
+		return id;
+	}
+
+	private static String escape(String symbol) {
+		return symbol.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private static String unescape(String symbol) {
+		StringBuilder unescaped = new StringBuilder(symbol.length());
+		for (int i = 0; i < symbol.length(); i++) {
+			char c = symbol.charAt(i);
+			if (c == '\\' && i + 1 < symbol.length()) {
+				c = symbol.charAt(++i);
+			}
+			unescaped.append(c);
+		}
+		return unescaped.toString();
+	}
+
+	private static String unquote(String name) {
+		return name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"") ? unescape(name.substring(1, name.length() - 1)) : name;
+	}
+}
@@ -0,0 +1,358 @@
+package basiclearner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+/**
+ * The structure of a hypothesis which test-word generators need: the reachable states with their (shortest)
+ * access sequences, a characterizing set, and for every state a set of words which distinguishes it from all
+ * other states. The hypothesis is copied into int-arrays once, and the distinguishing words are found with a
+ * splitting tree: every inner node has a word which separates its children, and the words on the path to a
+ * leaf identify the states in that leaf. This takes memory linear in the size of the hypothesis, instead of
+ * quadratic for a separating word per pair of states.
+ *
+ * @param <I> the input type of the hypothesis
+ */
+public class HypothesisStructure<I> {
+	private final List<I> inputs;
+	private final Map<I, Integer> inputIds = new HashMap<>();
+	private final int nrInputs, nrStates;
+	/** successors[state * nrInputs + input] and outputs[state * nrInputs + input], with interned outputs */
+	private final int[] successors, outputs;
+	private final List<Word<I>> accessSequences;
+	private final List<Word<I>> characterizingSet;
+	private final List<List<Word<I>>> stateIdentifiers;
+
+	/**
+	 * @param hypothesis a complete hypothesis
+	 * @param inputs the inputs of the hypothesis
+	 */
+	public HypothesisStructure(MealyMachine<?, I, ?, ?> hypothesis, Collection<? extends I> inputs) {
+		this(transitionsOf(hypothesis), inputs);
+	}
+
+	/**
+	 * @param hypothesis a hypothesis read back from a file
+	 * @return the structure of the hypothesis, over its own inputs
+	 */
+	public static HypothesisStructure<String> of(final HypothesisSnapshot hypothesis) {
+		final Map<String, Integer> inputIds = new HashMap<>();
+		for (int input = 0; input < hypothesis.getInputs().size(); input++) {
+			inputIds.put(hypothesis.getInputs().get(input), input);
+		}
+		return new HypothesisStructure<>(new Transitions<Integer, String>() {
+			@Override
+			public Integer getInitialState() {
+				return 0;
+			}
+
+			@Override
+			public Integer getSuccessor(Integer state, String input) {
+				return hypothesis.getSuccessor(state, inputIds.get(input));
+			}
+
+			@Override
+			public Object getOutput(Integer state, String input) {
+				return hypothesis.getOutput(state, inputIds.get(input));
+			}
+		}, hypothesis.getInputs());
+	}
+
+	private HypothesisStructure(Transitions<?, I> hypothesis, Collection<? extends I> inputs) {
+		this.inputs = new ArrayList<>(inputs);
+		this.nrInputs = this.inputs.size();
+		for (int input = 0; input < nrInputs; input++) {
+			inputIds.put(this.inputs.get(input), input);
+		}
+		List<int[]> table = new ArrayList<>();
+		this.accessSequences = new ArrayList<>();
+		explore(hypothesis, table, accessSequences);
+		this.nrStates = accessSequences.size();
+		this.successors = table.get(0);
+		this.outputs = table.get(1);
+		this.characterizingSet = new ArrayList<>();
+		this.stateIdentifiers = new ArrayList<>();
+		buildSplittingTree();
+	}
+
+	/**
+	 * The transitions of a complete hypothesis, which is either a MealyMachine or a HypothesisSnapshot
+	 */
+	private interface Transitions<S,I> {
+		S getInitialState();
+		S getSuccessor(S state, I input);
+		Object getOutput(S state, I input);
+	}
+
+	private static <S,I> Transitions<S,I> transitionsOf(final MealyMachine<S, I, ?, ?> hypothesis) {
+		return new Transitions<S,I>() {
+			@Override
+			public S getInitialState() {
+				return hypothesis.getInitialState();
+			}
+
+			@Override
+			public S getSuccessor(S state, I input) {
+				return hypothesis.getSuccessor(state, input);
+			}
+
+			@Override
+			public Object getOutput(S state, I input) {
+				return hypothesis.getOutput(state, input);
+			}
+		};
+	}
+
+	/**
+	 * Breadth-first search from the initial state, which numbers the reachable states in the order of their
+	 * shortest access sequences
+	 */
+	private <S> void explore(Transitions<S, I> hypothesis, List<int[]> table, List<Word<I>> accessSequences) {
+		Map<S, Integer> stateIds = new HashMap<>();
+		List<S> states = new ArrayList<>();
+		Map<Object, Integer> outputIds = new HashMap<>();
+		S initialState = hypothesis.getInitialState();
+		stateIds.put(initialState, 0);
+		states.add(initialState);
+		accessSequences.add(Word.<I>epsilon());
+		int[] successors = new int[16 * nrInputs], outputs = new int[16 * nrInputs];
+		for (int state = 0; state < states.size(); state++) {
+			if ((state + 1) * nrInputs > successors.length) {
+				successors = Arrays.copyOf(successors, 2 * successors.length);
+				outputs = Arrays.copyOf(outputs, successors.length);
+			}
+			for (int input = 0; input < nrInputs; input++) {
+				S successor = hypothesis.getSuccessor(states.get(state), inputs.get(input));
+				if (successor == null) {
+					throw new IllegalArgumentException("The hypothesis is not complete");
+				}
+				Integer successorId = stateIds.get(successor);
+				if (successorId == null) {
+					successorId = states.size();
+					stateIds.put(successor, successorId);
+					states.add(successor);
+					accessSequences.add(accessSequences.get(state).append(inputs.get(input)));
+				}
+				Object output = hypothesis.getOutput(states.get(state), inputs.get(input));
+				Integer outputId = outputIds.get(output);
+				if (outputId == null) {
+					outputId = outputIds.size();
+					outputIds.put(output, outputId);
+				}
+				successors[state * nrInputs + input] = successorId;
+				outputs[state * nrInputs + input] = outputId;
+			}
+		}
+		table.add(Arrays.copyOf(successors, states.size() * nrInputs));
+		table.add(Arrays.copyOf(outputs, states.size() * nrInputs));
+	}
+
+	/**
+	 * Split the leaves of the tree until no leaf can be split anymore. A leaf is split by a single input if its
+	 * states have different outputs for it, or else by an input followed by the separator of the lowest common
+	 * ancestor of the leaves its states move to.
+	 */
+	private void buildSplittingTree() {
+		List<Integer> parents = new ArrayList<>(), depths = new ArrayList<>();
+		List<int[]> separators = new ArrayList<>();
+		List<List<Integer>> leafStates = new ArrayList<>();
+		int[] leafOf = new int[nrStates];
+		parents.add(-1);
+		depths.add(0);
+		separators.add(null);
+		List<Integer> allStates = new ArrayList<>();
+		for (int state = 0; state < nrStates; state++) {
+			allStates.add(state);
+		}
+		leafStates.add(allStates);
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int node = 0; node < leafStates.size(); node++) {
+				List<Integer> states = leafStates.get(node);
+				if (states == null || states.size() < 2) {
+					continue;
+				}
+				int[] separator = findSeparator(states, leafOf, parents, depths, separators);
+				if (separator == null) {
+					continue;
+				}
+				// split the leaf into a child per output of the separator
+				Map<List<Integer>, List<Integer>> groups = new LinkedHashMap<>();
+				for (int state : states) {
+					List<Integer> output = run(state, separator);
+					if (!groups.containsKey(output)) {
+						groups.put(output, new ArrayList<Integer>());
+					}
+					groups.get(output).add(state);
+				}
+				separators.set(node, separator);
+				leafStates.set(node, null);
+				for (List<Integer> group : groups.values()) {
+					int child = leafStates.size();
+					parents.add(node);
+					depths.add(depths.get(node) + 1);
+					separators.add(null);
+					leafStates.add(group);
+					for (int state : group) {
+						leafOf[state] = child;
+					}
+				}
+				changed = true;
+			}
+		}
+		Map<List<I>, Word<I>> uniqueSeparators = new LinkedHashMap<>();
+		for (int[] separator : separators) {
+			if (separator != null) {
+				Word<I> word = toWord(separator);
+				uniqueSeparators.put(word.asList(), word);
+			}
+		}
+		characterizingSet.addAll(uniqueSeparators.values());
+		if (characterizingSet.isEmpty()) {
+			characterizingSet.add(Word.<I>epsilon());
+		}
+		for (int state = 0; state < nrStates; state++) {
+			// the separators on the path from the root, which together separate the state from all other leaves
+			List<Word<I>> path = new ArrayList<>();
+			for (int node = parents.get(leafOf[state]); node >= 0; node = parents.get(node)) {
+				path.add(toWord(separators.get(node)));
+			}
+			Collections.reverse(path);
+			LinkedHashSet<Word<I>> identifier = new LinkedHashSet<>(path);
+			if (identifier.isEmpty()) {
+				identifier.add(Word.<I>epsilon());
+			}
+			stateIdentifiers.add(Collections.unmodifiableList(new ArrayList<>(identifier)));
+		}
+	}
+
+	private int[] findSeparator(List<Integer> states, int[] leafOf, List<Integer> parents, List<Integer> depths, List<int[]> separators) {
+		int first = states.get(0);
+		for (int input = 0; input < nrInputs; input++) {
+			for (int state : states) {
+				if (outputs[state * nrInputs + input] != outputs[first * nrInputs + input]) {
+					return new int[] {input};
+				}
+			}
+		}
+		for (int input = 0; input < nrInputs; input++) {
+			int ancestor = leafOf[successors[first * nrInputs + input]];
+			for (int state : states) {
+				int leaf = leafOf[successors[state * nrInputs + input]];
+				// lowest common ancestor of the leaves of the successors so far
+				while (leaf != ancestor) {
+					if (depths.get(leaf) >= depths.get(ancestor)) {
+						leaf = parents.get(leaf);
+					} else {
+						ancestor = parents.get(ancestor);
+					}
+				}
+			}
+			if (separators.get(ancestor) != null) {
+				int[] ancestorSeparator = separators.get(ancestor);
+				int[] separator = new int[ancestorSeparator.length + 1];
+				separator[0] = input;
+				System.arraycopy(ancestorSeparator, 0, separator, 1, ancestorSeparator.length);
+				return separator;
+			}
+		}
+		return null;
+	}
+
+	private List<Integer> run(int state, int[] word) {
+		List<Integer> output = new ArrayList<>(word.length);
+		for (int input : word) {
+			output.add(outputs[state * nrInputs + input]);
+			state = successors[state * nrInputs + input];
+		}
+		return output;
+	}
+
+	private Word<I> toWord(int[] inputIndices) {
+		WordBuilder<I> word = new WordBuilder<>(inputIndices.length);
+		for (int input : inputIndices) {
+			word.append(inputs.get(input));
+		}
+		return word.toWord();
+	}
+
+	public int getNrStates() {
+		return nrStates;
+	}
+
+	public int getNrInputs() {
+		return nrInputs;
+	}
+
+	public I getInput(int input) {
+		return inputs.get(input);
+	}
+
+	/**
+	 * @return the index of the given input, as used by getInput and getSuccessor
+	 */
+	public int getInputIndex(I input) {
+		Integer inputId = inputIds.get(input);
+		if (inputId == null) {
+			throw new IllegalArgumentException("Input " + input + " is not in the alphabet of the hypothesis");
+		}
+		return inputId;
+	}
+
+	/**
+	 * @return the state reached by the given input in the given state
+	 */
+	public int getSuccessor(int state, int input) {
+		return successors[state * nrInputs + input];
+	}
+
+	/**
+	 * @return the state reached from the initial state (0) by the given word
+	 */
+	public int getState(Word<I> word) {
+		int state = 0;
+		for (I input : word) {
+			state = successors[state * nrInputs + getInputIndex(input)];
+		}
+		return state;
+	}
+
+	/**
+	 * @return a shortest word which leads from the initial state to the given state
+	 */
+	public Word<I> getAccessSequence(int state) {
+		return accessSequences.get(state);
+	}
+
+	/**
+	 * @return words which together distinguish every pair of states (only the empty word if there is one state)
+	 */
+	public List<Word<I>> getCharacterizingSet() {
+		return Collections.unmodifiableList(characterizingSet);
+	}
+
+	/**
+	 * @return words which together distinguish the given state from every other state (only the empty word if
+	 * there is one state)
+	 */
+	public List<Word<I>> getStateIdentifier(int state) {
+		return stateIdentifiers.get(state);
+	}
+
+	@Override
+	public String toString() {
+		return "HypothesisStructure with " + nrStates + " states, " + nrInputs + " inputs and " + characterizingSet.size() + " characterizing words";
+	}
+}
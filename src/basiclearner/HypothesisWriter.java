@@ -0,0 +1,122 @@
+package basiclearner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Writes hypothesis snapshots to files on a background thread, so that learning does not wait for the disk. The
+ * queue of snapshots to write is bounded: if the writer cannot keep up, submitting blocks until there is room,
+ * so that every hypothesis is written and the waiting snapshots do not fill the memory. Errors are printed,
+ * since a missing intermediate hypothesis should not stop an experiment.
+ */
+public class HypothesisWriter implements AutoCloseable {
+	public static final int DEFAULT_CAPACITY = 4;
+
+	private final int capacity;
+	private final Deque<Task> queue = new ArrayDeque<>();
+	private final Thread thread;
+	private boolean closed = false;
+	private long nrWritten = 0;
+
+	private static class Task {
+		final HypothesisSnapshot snapshot;
+		final String fileName;
+
+		Task(HypothesisSnapshot snapshot, String fileName) {
+			this.snapshot = snapshot;
+			this.fileName = fileName;
+		}
+	}
+
+	public HypothesisWriter() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the maximum number of snapshots waiting to be written
+	 */
+	public HypothesisWriter(int capacity) {
+		this.capacity = capacity;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeAll();
+			}
+		}, "hypothesis writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Write the snapshot in the table format. Only blocks if the queue is full.
+	 * @param fileName filename without extension, .txt is added
+	 * @param snapshot
+	 */
+	public synchronized void submit(String fileName, HypothesisSnapshot snapshot) {
+		if (closed) {
+			throw new IllegalStateException("The hypothesis writer is closed");
+		}
+		while (queue.size() >= capacity && !closed) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				// still write this snapshot, but let the caller see the interrupt
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		queue.addLast(new Task(snapshot, fileName));
+		notifyAll();
+	}
+
+	private void writeAll() {
+		while (true) {
+			Task task;
+			synchronized (this) {
+				while (queue.isEmpty() && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (queue.isEmpty()) {
+					return;
+				}
+				task = queue.removeFirst();
+				notifyAll();
+			}
+			try {
+				task.snapshot.write(new File(task.fileName + ".txt"));
+				synchronized (this) {
+					nrWritten++;
+				}
+			} catch (IOException e) {
+				System.err.println("Warning: could not write hypothesis " + task.fileName);
+				System.err.println(e.getMessage());
+			}
+		}
+	}
+
+	public synchronized long getNrWritten() {
+		return nrWritten;
+	}
+
+	/**
+	 * Writes the snapshots which are still waiting, and stops the thread
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package basiclearner;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with power-of-two buckets: bucket i counts the durations from 2^i up to 2^(i+1)
+ * nanoseconds (bucket 0 also counts zero). This takes constant memory however long an experiment runs, and
+ * recording is lock-free, so a pool of SULs can record into the same histogram. Percentiles are estimated as
+ * the upper bound of their bucket, so they are at most a factor two too high.
+ */
+public class LatencyHistogram {
+	public static final int NR_BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(NR_BUCKETS);
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * @param nanos a duration, in nanoseconds
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		buckets.incrementAndGet(getBucket(nanos));
+		totalNanos.add(nanos);
+		long max;
+		while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+			// another thread recorded a new maximum, try again
+		}
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int bucket = 0; bucket < NR_BUCKETS; bucket++) {
+			count += buckets.get(bucket);
+		}
+		return count;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public long getMeanNanos() {
+		long count = getCount();
+		return count == 0 ? 0 : getTotalNanos() / count;
+	}
+
+	/**
+	 * @param bucket
+	 * @return the number of durations from 2^bucket up to 2^(bucket+1) nanoseconds
+	 */
+	public long getBucketCount(int bucket) {
+		return buckets.get(bucket);
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return an upper bound for the given percentile of the durations, in nanoseconds (0 if nothing was recorded)
+	 */
+	public long getPercentileNanos(double percentile) {
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count)), seen = 0;
+		for (int bucket = 0; bucket < NR_BUCKETS; bucket++) {
+			seen += buckets.get(bucket);
+			if (seen >= rank) {
+				return Math.min(getMaxNanos(), bucket == NR_BUCKETS - 1 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1);
+			}
+		}
+		return getMaxNanos();
+	}
+
+	private static int getBucket(long nanos) {
+		return nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+	}
+}
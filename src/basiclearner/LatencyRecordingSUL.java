@@ -0,0 +1,52 @@
+package basiclearner;
+
+import de.learnlib.api.SUL;
+import de.learnlib.api.SULException;
+
+/**
+ * SUL-wrapper which measures the duration of every reset and step of the wrapped SUL, and reports it to a
+ * SULLatencyListener (e.g. ExperimentMetrics). The reset of a query is the time spent in pre and post together,
+ * as adapters differ in which of the two does the actual reset work. Wrap the SUL itself, so that the time spent in other wrappers
+ * is not counted. The listener may be shared by the SULs of a pool.
+ *
+ * @param <I>
+ * @param <O>
+ */
+public class LatencyRecordingSUL<I,O> implements SUL<I,O> {
+	private final SUL<I,O> sul;
+	private final SULLatencyListener listener;
+	/** the duration of the start of the current query, which is reported together with post */
+	long preNanos = 0;
+
+	/**
+	 * @param sul the SUL to measure
+	 * @param listener receives the duration of every step and reset
+	 */
+	public LatencyRecordingSUL(SUL<I,O> sul, SULLatencyListener listener) {
+		this.sul = sul;
+		this.listener = listener;
+	}
+
+	@Override
+	public void pre() {
+		long start = System.nanoTime();
+		sul.pre();
+		preNanos = System.nanoTime() - start;
+	}
+
+	@Override
+	public void post() {
+		long start = System.nanoTime();
+		sul.post();
+		listener.resetCompleted(preNanos + System.nanoTime() - start);
+		preNanos = 0;
+	}
+
+	@Override
+	public O step(I input) throws SULException {
+		long start = System.nanoTime();
+		O output = sul.step(input);
+		listener.stepCompleted(System.nanoTime() - start);
+		return output;
+	}
+}
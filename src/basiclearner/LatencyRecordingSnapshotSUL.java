@@ -0,0 +1,51 @@
+package basiclearner;
+
+import de.learnlib.api.SULException;
+
+/**
+ * LatencyRecordingSUL for a SUL which can save its state. Restoring a snapshot starts a query instead of pre, so
+ * it is measured as part of the reset. Taking and releasing snapshots is not measured.
+ *
+ * @param <I>
+ * @param <O>
+ * @param <S> the type of the snapshots
+ */
+public class LatencyRecordingSnapshotSUL<I,O,S> extends LatencyRecordingSUL<I,O> implements SnapshotSUL<I,O,S> {
+	private final SnapshotSUL<I,O,S> sul;
+
+	/**
+	 * @param sul the SUL to measure
+	 * @param listener receives the duration of every step and reset
+	 */
+	public LatencyRecordingSnapshotSUL(SnapshotSUL<I,O,S> sul, SULLatencyListener listener) {
+		super(sul, listener);
+		this.sul = sul;
+	}
+
+	@Override
+	public boolean canSnapshot() {
+		return sul.canSnapshot();
+	}
+
+	@Override
+	public S snapshot() throws SULException {
+		return sul.snapshot();
+	}
+
+	@Override
+	public void restore(S snapshot) throws SULException {
+		long start = System.nanoTime();
+		sul.restore(snapshot);
+		preNanos = System.nanoTime() - start;
+	}
+
+	@Override
+	public void release(S snapshot) {
+		sul.release(snapshot);
+	}
+
+	@Override
+	public long getSize(S snapshot) {
+		return sul.getSize(snapshot);
+	}
+}
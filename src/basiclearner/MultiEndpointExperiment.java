@@ -0,0 +1,144 @@
+package basiclearner;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import de.learnlib.api.SUL;
+import de.learnlib.api.SULException;
+import de.learnlib.oracles.DefaultQuery;
+
+/**
+ * Runs MultiEndpointOracle against local stand-in adapters on loopback ports: three SocketSULAdapters which serve
+ * the same generated machine with different simulated latencies, of which the slowest one breaks halfway, and a
+ * port on which nothing listens. Checks all answers against the machine, and prints the statistics of every
+ * endpoint: the fast adapters should get most of the queries, and the queries of the broken one are run elsewhere.
+ *
+ * Run the main method, optionally with the number of queries as argument.
+ */
+public class MultiEndpointExperiment {
+	private static final String RESET_CMD = "reset";
+	private static final int BATCH_SIZE = 500, QUERY_LENGTH = 10;
+
+	public static void main(String[] args) throws IOException {
+		int nrQueries = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		RandomMealySUL machine = new RandomMealySUL(RandomMealySUL.Structure.RANDOM, 100, 5, 4, 1);
+		// step and reset delays in microseconds, and the number of steps after which the adapter breaks (0 for never)
+		long[][] adapterSettings = {{20, 200, 0}, {50, 500, 0}, {200, 2000, nrQueries * QUERY_LENGTH / 6}};
+		List<SocketSULAdapter> adapters = new ArrayList<>();
+		List<InetSocketAddress> endpoints = new ArrayList<>();
+		for (long[] settings : adapterSettings) {
+			SocketSULAdapter adapter = startAdapter(new RandomMealySUL(RandomMealySUL.Structure.RANDOM, 100, 5, 4, 1,
+					settings[0] * 1000, settings[1] * 1000), settings[2]);
+			adapters.add(adapter);
+			endpoints.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), adapter.getPort()));
+		}
+		endpoints.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), unusedPort()));
+
+		MultiEndpointOracle.TIMEOUT_MILLIS = 2000;
+		Random random = new Random(42);
+		int nrWrong = 0;
+		long start = System.nanoTime();
+		try (MultiEndpointOracle oracle = new MultiEndpointOracle(endpoints, true, RESET_CMD)) {
+			for (int batchStart = 0; batchStart < nrQueries; batchStart += BATCH_SIZE) {
+				List<DefaultQuery<String, Word<String>>> batch = new ArrayList<>();
+				for (int i = batchStart; i < Math.min(nrQueries, batchStart + BATCH_SIZE); i++) {
+					WordBuilder<String> input = new WordBuilder<>(QUERY_LENGTH);
+					for (int j = 0; j < QUERY_LENGTH; j++) {
+						input.append(machine.getInputs().get(random.nextInt(machine.getInputs().size())));
+					}
+					batch.add(new DefaultQuery<String, Word<String>>(input.toWord()));
+				}
+				oracle.processQueries(batch);
+				for (DefaultQuery<String, Word<String>> query : batch) {
+					if (!query.getOutput().equals(run(machine, query.getInput()))) {
+						nrWrong++;
+					}
+				}
+			}
+			System.out.println(nrQueries + " queries in " + (System.nanoTime() - start) / 1000000 + " ms, "
+					+ nrWrong + " with wrong answers");
+			System.out.print(oracle.getStatistics());
+		} finally {
+			for (SocketSULAdapter adapter : adapters) {
+				adapter.close();
+			}
+		}
+	}
+
+	/**
+	 * Serve the SUL on a free port, on a background thread
+	 * @param breakAfterSteps the number of steps after which the adapter stops, 0 for never
+	 */
+	private static SocketSULAdapter startAdapter(final SUL<String,String> sul, final long breakAfterSteps) throws IOException {
+		final SocketSULAdapter[] adapter = new SocketSULAdapter[1];
+		SUL<String,String> breakingSul = new SUL<String,String>() {
+			private long nrSteps = 0;
+
+			@Override
+			public void pre() {
+				sul.pre();
+			}
+
+			@Override
+			public void post() {
+				sul.post();
+			}
+
+			@Override
+			public String step(String input) throws SULException {
+				if (breakAfterSteps > 0 && ++nrSteps == breakAfterSteps) {
+					try {
+						adapter[0].close();
+					} catch (IOException e) {
+						// it stops anyway
+					}
+					throw new SULException(new IOException("Adapter broke after " + nrSteps + " steps"));
+				}
+				return sul.step(input);
+			}
+		};
+		adapter[0] = new SocketSULAdapter(breakingSul, 0, RESET_CMD);
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					adapter[0].run();
+				} catch (SULException e) {
+					System.err.println(e.getCause().getMessage());
+				}
+			}
+		}, "SUL adapter " + adapter[0].getPort());
+		thread.setDaemon(true);
+		thread.start();
+		return adapter[0];
+	}
+
+	/**
+	 * @return a loopback port on which nothing listens
+	 */
+	private static int unusedPort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static Word<String> run(SUL<String,String> sul, Word<String> input) {
+		sul.pre();
+		try {
+			WordBuilder<String> output = new WordBuilder<>(input.length());
+			for (String symbol : input) {
+				output.append(sul.step(symbol));
+			}
+			return output.toWord();
+		} finally {
+			sul.post();
+		}
+	}
+}
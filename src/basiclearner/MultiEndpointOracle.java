@@ -0,0 +1,320 @@
+package basiclearner;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import de.learnlib.api.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.Query;
+import de.learnlib.api.SULException;
+
+/**
+ * Membership oracle which spreads the queries over test adapters on several machines, with the protocol of
+ * SocketSUL, and balances the load by their latency. For every endpoint, moving averages of the step latency and
+ * of the extra latency of a reset (which SocketSUL notices at the first step after it) are kept. Every batch is
+ * divided by giving the queries, longest first, to the endpoint at which they would be completed first, given its
+ * latencies and the queries it already got. The endpoints then run their queries in parallel.
+ *
+ * An endpoint which fails (cannot be reached, closes the connection, or does not connect or answer within
+ * TIMEOUT_MILLIS) is taken out of rotation, and its unanswered queries are run again on the other endpoints. It is
+ * tried again after a back-off time, which doubles after every failure. If no endpoint is left, the oracle waits for the first one to be
+ * tried again, and the queries only fail if none of them has been answered for GIVE_UP_MILLIS.
+ */
+public class MultiEndpointOracle implements MealyMembershipOracle<String,String>, AutoCloseable {
+	/** the weight of a new measurement in the moving averages */
+	public static double AVERAGE_WEIGHT = 0.2;
+	public static int TIMEOUT_MILLIS = 10000;
+	public static long INITIAL_BACKOFF_MILLIS = 1000, MAX_BACKOFF_MILLIS = 60000;
+	/** the time without any answered query after which the queries fail */
+	public static long GIVE_UP_MILLIS = 600000;
+
+	private final List<Endpoint> endpoints = new ArrayList<>();
+	private final boolean extraNewLine;
+	private final String resetCmd;
+	private final ExecutorService executor;
+
+	private class Endpoint {
+		final InetSocketAddress address;
+		/** null if not connected */
+		SocketSUL sul = null;
+		/** moving averages, negative if not measured yet */
+		double stepNanos = -1, resetNanos = -1;
+		long retryTime = 0, backoffMillis = INITIAL_BACKOFF_MILLIS;
+		long nrQueries = 0, nrFailures = 0;
+
+		Endpoint(InetSocketAddress address) {
+			this.address = address;
+		}
+
+		boolean isAvailable() {
+			if (sul == null && System.currentTimeMillis() >= retryTime) {
+				try {
+					// an unreachable machine should not stall the other endpoints for the connect timeout of the system
+					sul = new SocketSUL(address.getAddress(), address.getPort(), extraNewLine, resetCmd, TIMEOUT_MILLIS);
+					sul.setTimeout(TIMEOUT_MILLIS);
+				} catch (IOException e) {
+					fail(e);
+				}
+			}
+			return sul != null;
+		}
+
+		void fail(Exception cause) {
+			nrFailures++;
+			System.err.println("SUL endpoint " + address + " failed, retrying after " + backoffMillis + " ms: " + cause);
+			if (sul != null) {
+				try {
+					sul.close();
+				} catch (Exception e) {
+					// it failed already
+				}
+				sul = null;
+			}
+			retryTime = System.currentTimeMillis() + backoffMillis;
+			backoffMillis = Math.min(2 * backoffMillis, MAX_BACKOFF_MILLIS);
+		}
+
+		/**
+		 * Run the queries, until they are done or the endpoint fails
+		 * @return the queries which are not answered
+		 */
+		List<Query<String, Word<String>>> run(List<Query<String, Word<String>>> queries) {
+			for (int i = 0; i < queries.size(); i++) {
+				try {
+					answerQuery(queries.get(i));
+				} catch (IOException | SULException e) {
+					fail(e);
+					return queries.subList(i, queries.size());
+				}
+			}
+			backoffMillis = INITIAL_BACKOFF_MILLIS;
+			return Collections.emptyList();
+		}
+
+		private void answerQuery(Query<String, Word<String>> query) throws IOException {
+			Word<String> input = query.getInput();
+			WordBuilder<String> output = new WordBuilder<>(query.getSuffix().size());
+			long firstStepNanos = 0, otherStepsNanos = 0;
+			sul.pre();
+			for (int i = 0; i < input.size(); i++) {
+				long start = System.nanoTime();
+				String symbol = sul.step(input.getSymbol(i));
+				long nanos = System.nanoTime() - start;
+				if (symbol == null) {
+					throw new IOException("Connection closed by SUL");
+				}
+				if (i == 0) {
+					firstStepNanos = nanos;
+				} else {
+					otherStepsNanos += nanos;
+				}
+				if (i >= query.getPrefix().size()) {
+					output.append(symbol);
+				}
+			}
+			sul.post();
+			query.answer(output.toWord());
+			nrQueries++;
+			if (input.size() > 1) {
+				stepNanos = average(stepNanos, otherStepsNanos / (double) (input.size() - 1));
+			}
+			if (input.size() > 0 && stepNanos >= 0) {
+				resetNanos = average(resetNanos, Math.max(0, firstStepNanos - stepNanos));
+			}
+		}
+
+		/**
+		 * @return the expected time to run a query with the given number of symbols
+		 */
+		double getExpectedNanos(int length, double defaultStepNanos, double defaultResetNanos) {
+			return (resetNanos < 0 ? defaultResetNanos : resetNanos) + length * (stepNanos < 0 ? defaultStepNanos : stepNanos);
+		}
+	}
+
+	/**
+	 * @return the moving average with a new measurement, or the measurement if there is no average yet
+	 */
+	private static double average(double average, double measurement) {
+		return average < 0 ? measurement : (1 - AVERAGE_WEIGHT) * average + AVERAGE_WEIGHT * measurement;
+	}
+
+	/**
+	 * @param endpoints the addresses of the test adapters, which should all run the same system
+	 * @param extraNewLine whether to print a newline after every input, see SocketSUL
+	 * @param resetCmd the command to send for resetting the SUL
+	 */
+	public MultiEndpointOracle(List<InetSocketAddress> endpoints, boolean extraNewLine, String resetCmd) {
+		if (endpoints.isEmpty()) {
+			throw new IllegalArgumentException("At least one endpoint is needed");
+		}
+		for (InetSocketAddress address : endpoints) {
+			this.endpoints.add(new Endpoint(address));
+		}
+		this.extraNewLine = extraNewLine;
+		this.resetCmd = resetCmd;
+		this.executor = Executors.newFixedThreadPool(endpoints.size(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "SUL endpoint worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public synchronized void processQueries(Collection<? extends Query<String, Word<String>>> queries) {
+		List<Query<String, Word<String>>> pending = new ArrayList<>(queries);
+		// the time since which no query was answered, or -1 while the queries make progress
+		long stalledSince = -1;
+		while (!pending.isEmpty()) {
+			if (stalledSince >= 0 && System.currentTimeMillis() - stalledSince >= GIVE_UP_MILLIS) {
+				throw new SULException(new IOException("No SUL endpoint answered a query for " + (System.currentTimeMillis() - stalledSince)
+						+ " ms, " + pending.size() + " queries are not answered"));
+			}
+			List<Endpoint> available = new ArrayList<>();
+			for (Endpoint endpoint : endpoints) {
+				if (endpoint.isAvailable()) {
+					available.add(endpoint);
+				}
+			}
+			if (available.isEmpty()) {
+				long now = System.currentTimeMillis();
+				if (stalledSince < 0) {
+					stalledSince = now;
+				}
+				long retryTime = Long.MAX_VALUE;
+				for (Endpoint endpoint : endpoints) {
+					retryTime = Math.min(retryTime, endpoint.retryTime);
+				}
+				try {
+					Thread.sleep(Math.max(1, Math.min(retryTime, stalledSince + GIVE_UP_MILLIS) - now));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SULException(e);
+				}
+				continue;
+			}
+			Map<Endpoint, List<Query<String, Word<String>>>> assignment = assign(pending, available);
+			List<Future<List<Query<String, Word<String>>>>> results = new ArrayList<>();
+			for (final Map.Entry<Endpoint, List<Query<String, Word<String>>>> entry : assignment.entrySet()) {
+				results.add(executor.submit(new Callable<List<Query<String, Word<String>>>>() {
+					@Override
+					public List<Query<String, Word<String>>> call() {
+						return entry.getKey().run(entry.getValue());
+					}
+				}));
+			}
+			int nrPending = pending.size();
+			pending = new ArrayList<>();
+			for (Future<List<Query<String, Word<String>>>> result : results) {
+				try {
+					pending.addAll(result.get());
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				}
+			}
+			if (pending.size() < nrPending) {
+				stalledSince = -1;
+			} else if (stalledSince < 0) {
+				stalledSince = System.currentTimeMillis();
+			}
+		}
+	}
+
+	/**
+	 * Give every query, longest first, to the endpoint which would complete it first
+	 */
+	private Map<Endpoint, List<Query<String, Word<String>>>> assign(List<Query<String, Word<String>>> queries, List<Endpoint> available) {
+		// endpoints without measurements are assumed to be average, so that they get queries and are measured
+		double stepSum = 0, resetSum = 0;
+		int nrSteps = 0, nrResets = 0;
+		for (Endpoint endpoint : available) {
+			if (endpoint.stepNanos >= 0) {
+				stepSum += endpoint.stepNanos;
+				nrSteps++;
+			}
+			if (endpoint.resetNanos >= 0) {
+				resetSum += endpoint.resetNanos;
+				nrResets++;
+			}
+		}
+		double defaultStepNanos = nrSteps == 0 ? 1 : stepSum / nrSteps, defaultResetNanos = nrResets == 0 ? 0 : resetSum / nrResets;
+		List<Query<String, Word<String>>> sorted = new ArrayList<>(queries);
+		Collections.sort(sorted, new Comparator<Query<String, Word<String>>>() {
+			@Override
+			public int compare(Query<String, Word<String>> query1, Query<String, Word<String>> query2) {
+				return Integer.compare(query2.getInput().size(), query1.getInput().size());
+			}
+		});
+		Map<Endpoint, List<Query<String, Word<String>>>> assignment = new HashMap<>();
+		double[] completionNanos = new double[available.size()];
+		for (Query<String, Word<String>> query : sorted) {
+			int best = 0;
+			double bestCompletion = Double.MAX_VALUE;
+			for (int i = 0; i < available.size(); i++) {
+				double completion = completionNanos[i] + available.get(i).getExpectedNanos(query.getInput().size(), defaultStepNanos, defaultResetNanos);
+				if (completion < bestCompletion) {
+					best = i;
+					bestCompletion = completion;
+				}
+			}
+			completionNanos[best] = bestCompletion;
+			List<Query<String, Word<String>>> assigned = assignment.get(available.get(best));
+			if (assigned == null) {
+				assigned = new ArrayList<>();
+				assignment.put(available.get(best), assigned);
+			}
+			assigned.add(query);
+		}
+		return assignment;
+	}
+
+	/**
+	 * @return for every endpoint: the number of queries and failures, and the average latencies
+	 */
+	public synchronized String getStatistics() {
+		StringBuilder statistics = new StringBuilder();
+		for (Endpoint endpoint : endpoints) {
+			statistics.append(String.format("%s: %d queries, %d failures, step %.1f us, reset %.1f us%s%n", endpoint.address,
+					endpoint.nrQueries, endpoint.nrFailures, endpoint.stepNanos / 1000, endpoint.resetNanos / 1000,
+					endpoint.sul == null ? ", not connected" : ""));
+		}
+		return statistics.toString();
+	}
+
+	/**
+	 * Closes the connections and stops the worker threads
+	 */
+	@Override
+	public synchronized void close() {
+		executor.shutdownNow();
+		for (Endpoint endpoint : endpoints) {
+			if (endpoint.sul != null) {
+				try {
+					endpoint.sul.close();
+				} catch (Exception e) {
+					// closing anyway
+				}
+				endpoint.sul = null;
+			}
+		}
+	}
+}
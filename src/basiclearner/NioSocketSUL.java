@@ -0,0 +1,335 @@
+package basiclearner;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import de.learnlib.api.SUL;
+import de.learnlib.api.SULException;
+
+/**
+ * Socket interface to connect to an SUT/test adapter over TCP, with the same protocol as SocketSUL with
+ * extraNewLine set: every input is sent as a line and answered with one line, and the reset command is not answered.
+ *
+ * Unlike SocketSUL, it does not block forever on a hung adapter: steps and resets have a deadline. If a deadline
+ * passes or the connection fails, it reconnects, resets the SUL, and replays the inputs of the current query
+ * (checking that the outputs are the same as before), so that learning can continue unattended. Buffers are reused
+ * and outputs are interned, so that a step does not allocate a new String per output line.
+ */
+public class NioSocketSUL implements SUL<String,String>, AutoCloseable {
+	private static final int BUFFER_SIZE = 8192;
+	private final InetSocketAddress address;
+	private final String resetCmd;
+	private final long stepTimeoutNanos, resetTimeoutNanos;
+	private final int maxReconnects;
+	private SULLatencyListener latencyListener = null;
+
+	private SocketChannel channel;
+	private Selector selector;
+	private SelectionKey key;
+	private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private byte[] line = new byte[256];
+	private final Map<String, byte[]> encodedInputs = new HashMap<>();
+	private final InternTable outputs = new InternTable();
+	/** the current query, to replay after reconnecting */
+	private final List<String> queryInputs = new ArrayList<>(), queryOutputs = new ArrayList<>();
+	/** the number of reconnects during the current query */
+	private int reconnects = 0;
+
+	/**
+	 * Connects to a SUT (or test-adapter)
+	 * @param ip the ip-address, for example InetAddress.getLoopbackAddress() for localhost
+	 * @param port the tcp-port
+	 * @param resetCmd the command to send for resetting the SUT
+	 * @param stepTimeoutMillis the maximum time for the SUT to answer an input, or 0 for no deadline
+	 * @param resetTimeoutMillis the maximum time to send the reset command, or 0 for no deadline
+	 * @param maxReconnects the number of times to try reconnecting during one query, before giving up
+	 * @throws IOException if the first connection fails
+	 */
+	public NioSocketSUL(InetAddress ip, int port, String resetCmd, long stepTimeoutMillis, long resetTimeoutMillis, int maxReconnects) throws IOException {
+		this.address = new InetSocketAddress(ip, port);
+		this.resetCmd = resetCmd;
+		this.stepTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(stepTimeoutMillis);
+		this.resetTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(resetTimeoutMillis);
+		this.maxReconnects = maxReconnects;
+		connect();
+	}
+
+	/**
+	 * @param latencyListener receives the duration of every step and reset, or null
+	 */
+	public void setLatencyListener(SULLatencyListener latencyListener) {
+		this.latencyListener = latencyListener;
+	}
+
+	@Override
+	public void pre() {
+		queryInputs.clear();
+		queryOutputs.clear();
+		reconnects = 0;
+	}
+
+	@Override
+	public void post() {
+		long start = System.nanoTime();
+		try {
+			send(resetCmd, deadline(start, resetTimeoutNanos));
+		} catch (IOException e) {
+			// reconnecting resets the SUL as well
+			queryInputs.clear();
+			queryOutputs.clear();
+			reconnect(e);
+		}
+		queryInputs.clear();
+		queryOutputs.clear();
+		reconnects = 0;
+		if (latencyListener != null) {
+			latencyListener.resetCompleted(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public String step(String input) throws SULException {
+		long start = System.nanoTime();
+		String output;
+		while (true) {
+			try {
+				output = exchange(input);
+				break;
+			} catch (IOException e) {
+				reconnect(e);
+			}
+		}
+		queryInputs.add(input);
+		queryOutputs.add(output);
+		if (latencyListener != null) {
+			latencyListener.stepCompleted(System.nanoTime() - start);
+		}
+		return output;
+	}
+
+	/**
+	 * Reconnect, reset the SUL and replay the current query. The attempts are counted over the whole query,
+	 * so that an input which always makes the SUL fail does not make the query reconnect forever.
+	 * @param cause the failure which made reconnecting necessary
+	 * @throws SULException if the query ran out of attempts, or the SUL answers differently than before
+	 */
+	private void reconnect(IOException cause) throws SULException {
+		while (reconnects < maxReconnects) {
+			int attempt = ++reconnects;
+			System.err.println("Connection to SUL failed (" + cause.getMessage() + "), reconnecting: attempt " + attempt);
+			try {
+				disconnect();
+				Thread.sleep(Math.min(10000, 100L << Math.min(attempt, 10)));
+				connect();
+				send(resetCmd, deadline(System.nanoTime(), resetTimeoutNanos));
+				for (int i = 0; i < queryInputs.size(); i++) {
+					String output = exchange(queryInputs.get(i));
+					if (!output.equals(queryOutputs.get(i))) {
+						throw new SULException(new IOException("SUL answered " + output + " instead of " + queryOutputs.get(i)
+								+ " after reconnecting, to input " + queryInputs.subList(0, i + 1)));
+					}
+				}
+				return;
+			} catch (IOException e) {
+				cause = e;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SULException(e);
+			}
+		}
+		throw new SULException(new IOException("Gave up after " + reconnects + " reconnects during query " + queryInputs, cause));
+	}
+
+	private String exchange(String input) throws IOException {
+		long deadline = deadline(System.nanoTime(), stepTimeoutNanos);
+		send(input, deadline);
+		return readLine(deadline);
+	}
+
+	private static long deadline(long start, long timeoutNanos) {
+		return timeoutNanos <= 0 ? Long.MAX_VALUE : start + timeoutNanos;
+	}
+
+	private void send(String command, long deadline) throws IOException {
+		byte[] bytes = encodedInputs.get(command);
+		if (bytes == null) {
+			bytes = (command + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+			encodedInputs.put(command, bytes);
+		}
+		int offset = 0;
+		while (offset < bytes.length) {
+			int length = Math.min(writeBuffer.remaining(), bytes.length - offset);
+			writeBuffer.put(bytes, offset, length);
+			offset += length;
+			writeBuffer.flip();
+			while (writeBuffer.hasRemaining()) {
+				if (channel.write(writeBuffer) == 0) {
+					await(SelectionKey.OP_WRITE, deadline);
+				}
+			}
+			writeBuffer.clear();
+		}
+	}
+
+	private String readLine(long deadline) throws IOException {
+		int length = 0;
+		while (true) {
+			while (readBuffer.hasRemaining()) {
+				byte b = readBuffer.get();
+				if (b == '\n') {
+					if (length > 0 && line[length - 1] == '\r') {
+						length--;
+					}
+					return outputs.intern(line, length);
+				}
+				if (length == line.length) {
+					line = Arrays.copyOf(line, 2 * length);
+				}
+				line[length++] = b;
+			}
+			readBuffer.clear();
+			int read = channel.read(readBuffer);
+			readBuffer.flip();
+			if (read < 0) {
+				throw new EOFException("Connection closed by SUL");
+			} else if (read == 0) {
+				await(SelectionKey.OP_READ, deadline);
+			}
+		}
+	}
+
+	/**
+	 * Wait until the channel is ready for the given operation
+	 * @throws SocketTimeoutException if the deadline passes first
+	 */
+	private void await(int operation, long deadline) throws IOException {
+		key.interestOps(operation);
+		int ready;
+		if (deadline == Long.MAX_VALUE) {
+			ready = selector.select();
+		} else {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				throw new SocketTimeoutException("SUL did not answer in time");
+			}
+			ready = selector.select(remaining);
+		}
+		selector.selectedKeys().clear();
+		if (ready == 0 && System.nanoTime() - deadline >= 0) {
+			throw new SocketTimeoutException("SUL did not answer in time");
+		}
+	}
+
+	private void connect() throws IOException {
+		channel = SocketChannel.open();
+		long connectTimeout = TimeUnit.NANOSECONDS.toMillis(Math.max(stepTimeoutNanos, resetTimeoutNanos));
+		channel.socket().connect(address, (int) Math.min(Integer.MAX_VALUE, connectTimeout));
+		channel.socket().setTcpNoDelay(true);
+		channel.configureBlocking(false);
+		selector = Selector.open();
+		key = channel.register(selector, 0);
+		writeBuffer.clear();
+		readBuffer.clear();
+		readBuffer.flip();
+	}
+
+	private void disconnect() {
+		try {
+			if (selector != null) {
+				selector.close();
+			}
+			if (channel != null) {
+				channel.close();
+			}
+		} catch (IOException e) {
+			// the connection is dropped anyway
+		}
+	}
+
+	@Override
+	public void close() {
+		disconnect();
+	}
+
+	/**
+	 * Hash table from output lines (as bytes) to Strings, so that every distinct output is decoded only once
+	 */
+	private static class InternTable {
+		private byte[][] keys = new byte[64][];
+		private String[] values = new String[64];
+		private int size = 0;
+
+		String intern(byte[] bytes, int length) {
+			int mask = keys.length - 1;
+			int index = hash(bytes, length) & mask;
+			while (keys[index] != null) {
+				if (equal(keys[index], bytes, length)) {
+					return values[index];
+				}
+				index = (index + 1) & mask;
+			}
+			String value = new String(bytes, 0, length, StandardCharsets.UTF_8);
+			keys[index] = Arrays.copyOf(bytes, length);
+			values[index] = value;
+			if (++size > keys.length / 2) {
+				grow();
+			}
+			return value;
+		}
+
+		private void grow() {
+			byte[][] oldKeys = keys;
+			String[] oldValues = values;
+			keys = new byte[2 * oldKeys.length][];
+			values = new String[2 * oldValues.length];
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					int mask = keys.length - 1;
+					int index = hash(oldKeys[i], oldKeys[i].length) & mask;
+					while (keys[index] != null) {
+						index = (index + 1) & mask;
+					}
+					keys[index] = oldKeys[i];
+					values[index] = oldValues[i];
+					size++;
+				}
+			}
+		}
+
+		private static int hash(byte[] bytes, int length) {
+			int hash = 0;
+			for (int i = 0; i < length; i++) {
+				hash = 31 * hash + bytes[i];
+			}
+			return hash ^ (hash >>> 16);
+		}
+
+		private static boolean equal(byte[] key, byte[] bytes, int length) {
+			if (key.length != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (key[i] != bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -7,7 +7,10 @@ import de.learnlib.api.SUL;
 import de.learnlib.api.SULException;
 
 /**
- * SUL-wrapper to check for non-determinism, by use of an observation tree.
+ * SUL-wrapper to check for non-determinism, by use of an observation tree. Multiple instances (each wrapping
+ * their own SUL, for example in a pool of SULs) can share one ObservationCache, also from different threads.
+ * With a NonDeterminismResolver, contradicting outputs are resolved by repeating the inputs on the SUL, instead
+ * of stopping the experiment.
  * 
  * @author Ramon Janssen
  *
@@ -16,21 +19,54 @@ import de.learnlib.api.SULException;
  */
 public class NonDeterminismCheckingSUL<I,O> implements SUL<I,O> {
 	private final SUL<I,O> sul;
-	private final ObservationTree<I,O> root = new ObservationTree<I,O>();
+	private final ObservationCache<I,O> root;
+	private final NonDeterminismResolver<I,O> resolver;
 	private final List<I> inputs = new ArrayList<>();
 	private final List<O> outputs = new ArrayList<>();
 	
 	public NonDeterminismCheckingSUL(SUL<I,O> sul) {
+		this(sul, new ObservationTree<I,O>());
+	}
+	
+	/**
+	 * @param sul the SUL to wrap
+	 * @param root the observations to check with, which may be shared with an ObservationCacheOracle
+	 */
+	public NonDeterminismCheckingSUL(SUL<I,O> sul, ObservationCache<I,O> root) {
+		this(sul, root, null);
+	}
+
+	/**
+	 * @param sul the SUL to wrap
+	 * @param root the observations to check with, which may be shared with an ObservationCacheOracle
+	 * @param resolver resolves contradicting outputs by majority vote, or null to stop at any non-determinism
+	 */
+	public NonDeterminismCheckingSUL(SUL<I,O> sul, ObservationCache<I,O> root, NonDeterminismResolver<I,O> resolver) {
 		this.sul = sul;
+		this.root = root;
+		this.resolver = resolver;
+	}
+	
+	public ObservationCache<I,O> getObservationTree() {
+		return this.root;
 	}
 
 	@Override
 	public void post() {
 		sul.post();
-		// check for non-determinism: crashes if outputs are inconsistent with previous ones
-		root.addObservation(inputs, outputs);
-		inputs.clear();
-		outputs.clear();
+		try {
+			// check for non-determinism: crashes if outputs are inconsistent with previous ones
+			root.addObservation(inputs, outputs);
+		} catch (CacheInconsistencyException e) {
+			if (resolver == null) {
+				throw e;
+			}
+			// throws a TransientNonDeterminismException if this run was wrong
+			resolver.resolve(sul, root, e, inputs, outputs);
+		} finally {
+			inputs.clear();
+			outputs.clear();
+		}
 	}
 
 	@Override
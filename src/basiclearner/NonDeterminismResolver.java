@@ -0,0 +1,172 @@
+package basiclearner;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import de.learnlib.api.SUL;
+import de.learnlib.statistics.Counter;
+
+/**
+ * Resolves contradicting observations of a SUL by majority vote, for SULs which are deterministic but
+ * occasionally give a wrong output (e.g. because of timing or a lost message). The inputs up to the first
+ * contradicting output are repeated on the SUL, until one output has a clear majority (two votes more than any
+ * other, and more than half of all votes), the maximum number of repetitions is reached or the time limit is
+ * exceeded. The earlier and the new observation both count as one vote. Then:
+ * <ul>
+ * <li>if the earlier observation wins, the new outputs were wrong, and the query should be run again;</li>
+ * <li>if the new observation wins, it replaces the earlier one in the observations;</li>
+ * <li>without a majority, the non-determinism is persistent and the experiment cannot continue.</li>
+ * </ul>
+ * Note that a learner may already have used a replaced observation. Usually this only leads to a wrong
+ * hypothesis, which the tests then correct.
+ *
+ * @param <I>
+ * @param <O>
+ */
+public class NonDeterminismResolver<I,O> {
+	public static final int DEFAULT_MAX_REPETITIONS = 5;
+	public static final long DEFAULT_TIME_LIMIT_MILLIS = 10000;
+
+	private final int maxRepetitions;
+	private final long timeLimitNanos;
+	private final Counter nrConflicts = new Counter("contradicting observations", "observations");
+	private final Counter nrWrongNew = new Counter("wrong new observations", "observations");
+	private final Counter nrWrongOld = new Counter("replaced observations", "observations");
+	private final Counter nrPersistent = new Counter("persistent non-determinism", "observations");
+	private final Counter nrRepetitions = new Counter("repetitions for majority votes", "queries");
+	private final Counter nrRepeatedSymbols = new Counter("repeated symbols for majority votes", "symbols");
+
+	public NonDeterminismResolver() {
+		this(DEFAULT_MAX_REPETITIONS, DEFAULT_TIME_LIMIT_MILLIS);
+	}
+
+	/**
+	 * @param maxRepetitions the maximum number of times a contradicting observation is repeated, at least 2, since
+	 * a lead of two votes is needed after the one vote of both observations
+	 * @param timeLimitMillis the maximum time to spend on repeating one contradicting observation, 0 for no limit
+	 */
+	public NonDeterminismResolver(int maxRepetitions, long timeLimitMillis) {
+		if (maxRepetitions < 2) {
+			throw new IllegalArgumentException("At least two repetitions are needed for a majority vote, not " + maxRepetitions);
+		}
+		this.maxRepetitions = maxRepetitions;
+		this.timeLimitNanos = timeLimitMillis == 0 ? Long.MAX_VALUE : timeLimitMillis * 1000000;
+	}
+
+	/**
+	 * Resolve the contradiction between new outputs of the given SUL and the observations. The SUL should not be
+	 * in use, it is reset for every repetition.
+	 * @param sul the SUL which produced the new outputs
+	 * @param observations the observations which the new outputs contradict
+	 * @param conflict the contradiction
+	 * @param inputs the inputs of the new observation
+	 * @param outputs the outputs of the new observation
+	 * @throws TransientNonDeterminismException if the new outputs are wrong
+	 * @throws CacheInconsistencyException if no output has a majority
+	 */
+	public void resolve(SUL<I,O> sul, ObservationCache<I,O> observations, CacheInconsistencyException conflict,
+			List<I> inputs, List<O> outputs) throws CacheInconsistencyException {
+		synchronized (this) {
+			nrConflicts.increment();
+		}
+		@SuppressWarnings("unchecked")
+		Word<O> oldOutput = (Word<O>) conflict.getOldOutput();
+		Word<I> input = Word.fromList(inputs.subList(0, oldOutput.length()));
+		Word<O> newOutput = Word.fromList(outputs.subList(0, oldOutput.length()));
+		Map<Word<O>, Integer> votes = new HashMap<>();
+		votes.put(oldOutput, 1);
+		votes.put(newOutput, 1);
+		Word<O> majority = null;
+		long start = System.nanoTime();
+		for (int repetition = 0; repetition < maxRepetitions && System.nanoTime() - start < timeLimitNanos; repetition++) {
+			Word<O> output = run(sul, input);
+			Integer count = votes.get(output);
+			votes.put(output, count == null ? 1 : count + 1);
+			majority = getMajority(votes);
+			if (majority != null) {
+				break;
+			}
+		}
+		if (majority == null) {
+			synchronized (this) {
+				nrPersistent.increment();
+			}
+			throw new CacheInconsistencyException("Persistent non-determinism, the outputs of the repetitions were " + votes,
+					Word.fromList(inputs), oldOutput, Word.fromList(outputs));
+		}
+		if (majority.equals(newOutput)) {
+			observations.replaceObservation(inputs, outputs);
+			synchronized (this) {
+				nrWrongOld.increment();
+			}
+			return;
+		}
+		if (!majority.equals(oldOutput)) {
+			// neither observation was right
+			observations.replaceObservation(input.asList(), majority.asList());
+			synchronized (this) {
+				nrWrongOld.increment();
+			}
+		}
+		synchronized (this) {
+			nrWrongNew.increment();
+		}
+		throw new TransientNonDeterminismException(Word.fromList(inputs), oldOutput, Word.fromList(outputs));
+	}
+
+	/**
+	 * @return the output with two votes more than any other and more than half of all votes, or null if there is none
+	 */
+	private Word<O> getMajority(Map<Word<O>, Integer> votes) {
+		Word<O> leader = null;
+		int leaderVotes = 0, secondVotes = 0, totalVotes = 0;
+		for (Map.Entry<Word<O>, Integer> vote : votes.entrySet()) {
+			totalVotes += vote.getValue();
+			if (vote.getValue() > leaderVotes) {
+				secondVotes = leaderVotes;
+				leaderVotes = vote.getValue();
+				leader = vote.getKey();
+			} else if (vote.getValue() > secondVotes) {
+				secondVotes = vote.getValue();
+			}
+		}
+		return leaderVotes >= secondVotes + 2 && 2 * leaderVotes > totalVotes ? leader : null;
+	}
+
+	private Word<O> run(SUL<I,O> sul, Word<I> input) {
+		synchronized (this) {
+			nrRepetitions.increment();
+			nrRepeatedSymbols.increment(input.length());
+		}
+		sul.pre();
+		try {
+			WordBuilder<O> output = new WordBuilder<>(input.length());
+			for (I symbol : input) {
+				output.append(sul.step(symbol));
+			}
+			return output.toWord();
+		} finally {
+			sul.post();
+		}
+	}
+
+	/**
+	 * @return a summary of the contradictions and how they were resolved
+	 */
+	public synchronized String getStatistics() {
+		return "Contradicting observations: " + nrConflicts.getCount() + ", wrong new outputs: " + nrWrongNew.getCount()
+				+ ", replaced observations: " + nrWrongOld.getCount() + ", persistent: " + nrPersistent.getCount()
+				+ ", with " + nrRepetitions.getCount() + " repetitions (" + nrRepeatedSymbols.getCount() + " symbols)";
+	}
+
+	public synchronized long getNrConflicts() {
+		return nrConflicts.getCount();
+	}
+
+	public synchronized long getNrPersistent() {
+		return nrPersistent.getCount();
+	}
+}
@@ -0,0 +1,63 @@
+package basiclearner;
+
+import java.util.List;
+
+import net.automatalib.words.Word;
+
+/**
+ * Prefix-closed set of observations of a SUL, used to detect non-determinism and to answer queries without the SUL.
+ * Implementations are thread-safe, so that they can be shared by multiple SULs (e.g. in a pool) and oracles.
+ *
+ * @param <I> the input type of the observations
+ * @param <O> the output type of the observations
+ */
+public interface ObservationCache<I,O> {
+	/**
+	 * Add Observation to the cache
+	 * @param inputs
+	 * @param outputs
+	 * @throws CacheInconsistencyException Inconsistency between new and stored observations
+	 */
+	void addObservation(Word<I> inputs, Word<O> outputs) throws CacheInconsistencyException;
+
+	/**
+	 * Add Observation to the cache
+	 * @param inputs
+	 * @param outputs
+	 * @throws CacheInconsistencyException Inconsistency between new and stored observations
+	 */
+	void addObservation(List<I> inputs, List<O> outputs) throws CacheInconsistencyException;
+
+	/**
+	 * Add Observation to the cache, replacing the stored observations which are inconsistent with it: the first
+	 * stored output which differs, and everything observed after it. Only for observations which are known to be
+	 * right, for example by a majority vote over repeated queries.
+	 * @param inputs
+	 * @param outputs
+	 */
+	void replaceObservation(List<I> inputs, List<O> outputs);
+
+	/**
+	 * Look up the outputs previously observed for an input word. Since the cache is prefix-closed, this also
+	 * answers input words which are a prefix of an observed trace.
+	 * @param inputs
+	 * @return the observed output word, or null if (part of) the input word has not been observed yet
+	 */
+	Word<O> getOutput(Word<I> inputs);
+
+	/**
+	 * @return the number of nodes in the tree of observations, including the root
+	 */
+	int size();
+
+	/**
+	 * Visit all maximal traces (the paths from the root to the leaves) of the tree of observations. Together they
+	 * contain all observations. The visitor may be given the same lists for every trace, so it should copy them if needed.
+	 * @param visitor
+	 */
+	void forEachTrace(TraceVisitor<I,O> visitor);
+
+	interface TraceVisitor<I,O> {
+		void visitTrace(List<I> inputs, List<O> outputs);
+	}
+}
@@ -0,0 +1,125 @@
+package basiclearner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.automatalib.words.Word;
+import de.learnlib.api.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.Query;
+import de.learnlib.oracles.DefaultQuery;
+import de.learnlib.statistics.Counter;
+
+/**
+ * Membership oracle which answers queries from an observation tree where possible, and only passes
+ * cache misses on to the wrapped oracle (typically a SULOracle). Because the tree is prefix-closed,
+ * a query is also answered if it is the prefix of an earlier query. Answers for cache misses are added
+ * to the tree, so inconsistent answers of the wrapped oracle are reported as a CacheInconsistencyException.
+ * The tree may be shared with other users, also on other threads.
+ *
+ * @param <I> the input type of the queries
+ * @param <O> the output type of the queries
+ */
+public class ObservationCacheOracle<I,O> implements MealyMembershipOracle<I,O> {
+	private final ObservationCache<I,O> tree;
+	private final MealyMembershipOracle<I,O> delegate;
+	private final Counter nrHits, nrMisses;
+	private AtomicBoolean cancelled = null;
+	
+	public ObservationCacheOracle(MealyMembershipOracle<I,O> delegate) {
+		this(new ObservationTree<I,O>(), delegate);
+	}
+	
+	/**
+	 * @param tree observation tree to use as cache, which may be shared with a NonDeterminismCheckingSUL
+	 * @param delegate oracle to answer cache misses
+	 */
+	public ObservationCacheOracle(ObservationCache<I,O> tree, MealyMembershipOracle<I,O> delegate) {
+		this(tree, delegate, new Counter("cache hits", "queries"), new Counter("cache misses", "queries"));
+	}
+
+	/**
+	 * @param tree observation tree to use as cache, which may be shared with a NonDeterminismCheckingSUL
+	 * @param delegate oracle to answer cache misses
+	 * @param nrHits counter for the queries answered from the cache, which may be shared with other users
+	 * @param nrMisses counter for the queries passed on to the delegate, which may be shared with other users
+	 */
+	public ObservationCacheOracle(ObservationCache<I,O> tree, MealyMembershipOracle<I,O> delegate, Counter nrHits, Counter nrMisses) {
+		this.tree = tree;
+		this.delegate = delegate;
+		this.nrHits = nrHits;
+		this.nrMisses = nrMisses;
+	}
+
+	/**
+	 * @param cancelled flag which makes every following batch throw a CancellationException when set, also if it
+	 * would be answered from the cache (see CancellableSUL), or null
+	 */
+	public void setCancelFlag(AtomicBoolean cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	@Override
+	public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+		CancellableSUL.checkCancelled(cancelled);
+		List<Query<I, Word<O>>> cacheMisses = new ArrayList<>();
+		for (Query<I, Word<O>> query : queries) {
+			if (!answerFromCache(query)) {
+				cacheMisses.add(query);
+			}
+		}
+		if (cacheMisses.isEmpty()) {
+			return;
+		}
+		// pass all misses to the wrapped oracle in one batch (so that it can process them in parallel),
+		// asking every distinct input word only once
+		Map<Word<I>, DefaultQuery<I, Word<O>>> fullQueries = new LinkedHashMap<>();
+		for (Query<I, Word<O>> query : cacheMisses) {
+			Word<I> input = query.getInput();
+			if (!fullQueries.containsKey(input)) {
+				fullQueries.put(input, new DefaultQuery<I, Word<O>>(input));
+			}
+		}
+		nrMisses.increment(fullQueries.size());
+		nrHits.increment(cacheMisses.size() - fullQueries.size());
+		delegate.processQueries(fullQueries.values());
+		for (DefaultQuery<I, Word<O>> fullQuery : fullQueries.values()) {
+			tree.addObservation(fullQuery.getInput(), fullQuery.getOutput());
+		}
+		for (Query<I, Word<O>> query : cacheMisses) {
+			Word<O> output = fullQueries.get(query.getInput()).getOutput();
+			query.answer(output.suffix(query.getSuffix().size()));
+		}
+	}
+	
+	private boolean answerFromCache(Query<I, Word<O>> query) {
+		Word<O> output = tree.getOutput(query.getInput());
+		if (output == null) {
+			return false;
+		}
+		nrHits.increment();
+		query.answer(output.suffix(query.getSuffix().size()));
+		return true;
+	}
+	
+	public ObservationCache<I,O> getObservationTree() {
+		return this.tree;
+	}
+	
+	/**
+	 * @return counter for the number of queries answered without the wrapped oracle
+	 */
+	public Counter getHitCounter() {
+		return this.nrHits;
+	}
+	
+	/**
+	 * @return counter for the number of queries passed on to the wrapped oracle
+	 */
+	public Counter getMissCounter() {
+		return this.nrMisses;
+	}
+}
@@ -0,0 +1,257 @@
+package basiclearner;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only, memory-mapped file of observed traces. Symbols are written once as a definition record,
+ * traces refer to them by id. A record only becomes valid when its type byte is written, which happens
+ * after its contents and an END byte after it: a JVM which exits without closing the log (e.g. after a
+ * crash) leaves a log which can be replayed up to the last complete record. A replacement record is a trace which replaces the
+ * inconsistent observations before it (see ObservationCache.replaceObservation).
+ */
+public class ObservationLog implements Closeable {
+	private static final int MAGIC = 0x4f42534c, VERSION = 2, HEADER_SIZE = 8, INITIAL_SIZE = 1 << 16;
+	private static final byte END = 0, INPUT_SYMBOL = 1, OUTPUT_SYMBOL = 2, TRACE = 3, REPLACEMENT = 4;
+
+	private final File file;
+	private RandomAccessFile randomAccessFile;
+	private MappedByteBuffer buffer;
+	private final Map<String, Integer> inputIds = new HashMap<>(), outputIds = new HashMap<>();
+	private final List<String> inputSymbols = new ArrayList<>(), outputSymbols = new ArrayList<>();
+	private long nrSymbols = 0;
+
+	/**
+	 * Opens the log, creating it if it does not exist yet
+	 * @param file
+	 * @throws IOException if the file cannot be mapped, or is not an observation log
+	 */
+	public ObservationLog(File file) throws IOException {
+		this.file = file;
+		boolean existing = file.length() > 0;
+		map(Math.max(INITIAL_SIZE, file.length()));
+		if (existing) {
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) < 1 || buffer.getInt(4) > VERSION) {
+				throw new IOException(file + " is not an observation log");
+			}
+			// version 2 only adds a record type, so an older log is upgraded by its header
+			buffer.putInt(4, VERSION);
+		} else {
+			buffer.putInt(MAGIC).putInt(VERSION);
+		}
+		buffer.position(HEADER_SIZE);
+	}
+
+	/**
+	 * Read all traces in the log, in the order in which they were appended, and leave the log positioned
+	 * at its end. Should be called once, directly after opening the log.
+	 * @param visitor visits the traces
+	 * @param replacementVisitor visits the replacement traces
+	 */
+	public void replay(ObservationCache.TraceVisitor<String,String> visitor, ObservationCache.TraceVisitor<String,String> replacementVisitor) {
+		List<String> inputs = new ArrayList<>(), outputs = new ArrayList<>();
+		while (buffer.remaining() > 0) {
+			byte type = buffer.get(buffer.position());
+			if (type == END) {
+				break;
+			}
+			buffer.position(buffer.position() + 1);
+			switch (type) {
+			case INPUT_SYMBOL:
+				String input = readString();
+				inputIds.put(input, inputSymbols.size());
+				inputSymbols.add(input);
+				break;
+			case OUTPUT_SYMBOL:
+				String output = readString();
+				outputIds.put(output, outputSymbols.size());
+				outputSymbols.add(output);
+				break;
+			case TRACE:
+			case REPLACEMENT:
+				int length = buffer.getInt();
+				inputs.clear();
+				outputs.clear();
+				for (int i = 0; i < length; i++) {
+					inputs.add(inputSymbols.get(buffer.getInt()));
+					outputs.add(outputSymbols.get(buffer.getInt()));
+				}
+				nrSymbols += length;
+				(type == TRACE ? visitor : replacementVisitor).visitTrace(inputs, outputs);
+				break;
+			default:
+				throw new IllegalStateException("Corrupt observation log " + file + " at position " + (buffer.position() - 1));
+			}
+		}
+	}
+
+	/**
+	 * Append a trace to the log
+	 * @param inputs
+	 * @param outputs
+	 * @throws IOException if the log cannot grow
+	 */
+	public void append(List<String> inputs, List<String> outputs) throws IOException {
+		appendRecord(TRACE, inputs, outputs);
+	}
+
+	/**
+	 * Append a trace which replaces the inconsistent observations before it
+	 * @param inputs
+	 * @param outputs
+	 * @throws IOException if the log cannot grow
+	 */
+	public void appendReplacement(List<String> inputs, List<String> outputs) throws IOException {
+		appendRecord(REPLACEMENT, inputs, outputs);
+	}
+
+	private void appendRecord(byte type, List<String> inputs, List<String> outputs) throws IOException {
+		for (int i = 0; i < inputs.size(); i++) {
+			defineSymbol(inputs.get(i), inputIds, inputSymbols, INPUT_SYMBOL);
+			defineSymbol(outputs.get(i), outputIds, outputSymbols, OUTPUT_SYMBOL);
+		}
+		int recordStart = reserve(5 + 8 * inputs.size());
+		buffer.putInt(inputs.size());
+		for (int i = 0; i < inputs.size(); i++) {
+			buffer.putInt(inputIds.get(inputs.get(i)));
+			buffer.putInt(outputIds.get(outputs.get(i)));
+		}
+		commit(recordStart, type);
+		nrSymbols += inputs.size();
+	}
+
+	/**
+	 * @return the total number of symbols in all traces in the log, including redundant ones
+	 */
+	public long getNrSymbols() {
+		return nrSymbols;
+	}
+
+	/**
+	 * Replace the log by the traces in the given tree: the traces are written to a new file, which then
+	 * replaces the log. Afterwards, the log contains no redundant traces.
+	 * @param tree
+	 * @throws IOException
+	 */
+	public void compact(ObservationCache<String,String> tree) throws IOException {
+		File compactFile = new File(file.getPath() + ".compact");
+		compactFile.delete();
+		final ObservationLog compactLog = new ObservationLog(compactFile);
+		try {
+			tree.forEachTrace(new ObservationCache.TraceVisitor<String,String>() {
+				@Override
+				public void visitTrace(List<String> inputs, List<String> outputs) {
+					try {
+						compactLog.append(inputs, outputs);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+		} catch (UncheckedIOException e) {
+			compactLog.close();
+			throw e.getCause();
+		}
+		compactLog.close();
+		close();
+		Files.move(compactFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		inputIds.clear();
+		inputSymbols.clear();
+		outputIds.clear();
+		outputSymbols.clear();
+		nrSymbols = 0;
+		map(Math.max(INITIAL_SIZE, file.length()));
+		buffer.position(HEADER_SIZE);
+		ObservationCache.TraceVisitor<String,String> ignore = new ObservationCache.TraceVisitor<String,String>() {
+			@Override
+			public void visitTrace(List<String> inputs, List<String> outputs) {
+			}
+		};
+		replay(ignore, ignore);
+	}
+
+	/**
+	 * Truncates the file to the records written, and closes it
+	 */
+	@Override
+	public void close() throws IOException {
+		if (randomAccessFile != null) {
+			int end = buffer.position();
+			buffer.force();
+			buffer = null;
+			randomAccessFile.setLength(end);
+			randomAccessFile.close();
+			randomAccessFile = null;
+		}
+	}
+
+	private void defineSymbol(String symbol, Map<String, Integer> ids, List<String> symbols, byte type) throws IOException {
+		if (!ids.containsKey(symbol)) {
+			byte[] bytes = symbol.getBytes(StandardCharsets.UTF_8);
+			int recordStart = reserve(5 + bytes.length);
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+			commit(recordStart, type);
+			ids.put(symbol, symbols.size());
+			symbols.add(symbol);
+		}
+	}
+
+	private String readString() {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Make room for a record (including its type byte), and position the buffer after the type byte
+	 * @return the position of the type byte
+	 */
+	private int reserve(int recordSize) throws IOException {
+		// keep room for an END byte after the record
+		if (buffer.remaining() < recordSize + 1) {
+			long size = buffer.capacity();
+			while (size - buffer.position() < recordSize + 1) {
+				size *= 2;
+			}
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Observation log " + file + " exceeds the maximum size, compact it");
+			}
+			int position = buffer.position();
+			map(size);
+			buffer.position(position);
+		}
+		int recordStart = buffer.position();
+		buffer.position(recordStart + 1);
+		return recordStart;
+	}
+
+	/**
+	 * Terminate the log after the record which ends at the current position, and then make the record
+	 * valid. The END byte overwrites whatever an earlier, crashed run left behind the record, so that a
+	 * replay never reads stale bytes as records.
+	 */
+	private void commit(int recordStart, byte type) {
+		buffer.put(buffer.position(), END);
+		buffer.put(recordStart, type);
+	}
+
+	private void map(long size) throws IOException {
+		if (randomAccessFile == null) {
+			randomAccessFile = new RandomAccessFile(file, "rw");
+		}
+		buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+}
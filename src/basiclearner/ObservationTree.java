@@ -1,117 +1,295 @@
 package basiclearner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import net.automatalib.words.Word;
 
 /**
+ * Prefix-closed tree of observations. To keep the tree small for long experiments, nodes are not objects:
+ * input and output symbols are interned to small integers, and the nodes are stored in flat int-arrays.
+ * A node with a single child stores it inline, only branching nodes get a row of child-pointers indexed by input id.
+ * All access is synchronized on the tree; for many threads at once, ConcurrentObservationTree scales better.
+ *
  * @author Ramon Janssen
  *
  * @param <I> the input type of the observations
  * @param <O> the output type of the observations
  */
-public class ObservationTree<I,O> {	
-	private final ObservationTree<I,O> parent;
-	private final I parentInput;
-	private final O parentOutput;
-	private final Map<I, ObservationTree<I,O>> children;
-	private final Map<I, O> outputs;
-	
+public class ObservationTree<I,O> implements ObservationCache<I,O> {
+	private static final int ROOT = 0, NO_CHILD = 0, NO_ROW = -1, INITIAL_CAPACITY = 64;
+
+	private final Map<I, Integer> inputIds = new HashMap<>();
+	private final List<I> inputSymbols = new ArrayList<>();
+	private final Map<O, Integer> outputIds = new HashMap<>();
+	private final List<O> outputSymbols = new ArrayList<>();
+
+	/** number of child-slots per row, at least the number of interned inputs */
+	private int stride;
+	private int nrNodes = 1, nrRows = 0;
+	/** nodes which were removed by replaceObservation; their slots are not reused, since replacing is rare */
+	private int nrRemovedNodes = 0;
+	/** children[row * stride + inputId] is the child node, or NO_CHILD (the root is never a child) */
+	private int[] children;
+	/** for every node, the output id and input id on the transition to this node */
+	private int[] parentOutputs, parentInputs;
+	/** for every node, its row of children, or NO_ROW if it has at most one child, which is then stored inline */
+	private int[] rows, singleChildren;
+
 	public ObservationTree() {
-		this(null, null, null);
-	}
-	
-	private ObservationTree(ObservationTree<I,O> parent, I parentInput, O parentOutput) {
-		this.children = new HashMap<>();
-		this.outputs = new HashMap<>();
-		this.parent = parent;
-		this.parentInput = parentInput;
-		this.parentOutput = parentOutput;
+		this(new ArrayList<I>());
 	}
-	
+
 	/**
-	 * @return The outputs observed from the root of the tree until this node
+	 * @param inputAlphabet the inputs to intern beforehand, so that the tree does not need to grow its nodes
+	 * when new inputs are observed
 	 */
-	private List<O> getOutputChain() {
-		if (this.parent == null) {
-			return new LinkedList<O>();
-		} else {
-			List<O> parentChain = this.parent.getOutputChain();
-			parentChain.add(parentOutput);
-			return parentChain;
+	public ObservationTree(Collection<? extends I> inputAlphabet) {
+		for (I input : inputAlphabet) {
+			if (!inputIds.containsKey(input)) {
+				inputIds.put(input, inputSymbols.size());
+				inputSymbols.add(input);
+			}
 		}
+		this.stride = Math.max(1, inputSymbols.size());
+		this.children = new int[INITIAL_CAPACITY * stride];
+		this.parentOutputs = new int[INITIAL_CAPACITY];
+		this.parentInputs = new int[INITIAL_CAPACITY];
+		this.rows = new int[INITIAL_CAPACITY];
+		this.singleChildren = new int[INITIAL_CAPACITY];
+		this.rows[ROOT] = NO_ROW;
 	}
-	
-	private List<I> getInputChain() {
-		if (this.parent == null) {
-			return new LinkedList<I>();
-		} else {
-			List<I> parentChain = this.parent.getInputChain();
-			parentChain.add(this.parentInput);
-			return parentChain;
-		}
+
+	@Override
+	public synchronized int size() {
+		return nrNodes - nrRemovedNodes;
 	}
 
-	/**
-	 * Add one input and output symbol and traverse the tree to the next node
-	 * @param input
-	 * @param output
-	 * @return the next node
-	 * @throws InconsistencyException 
-	 */
-	public ObservationTree<I,O> addObservation(I input, O output) throws CacheInconsistencyException {
-		O previousOutput = this.outputs.get(input);
-		boolean createNewBranch = previousOutput == null;
-		if (createNewBranch) {
-			// input hasn't been queried before, make a new branch for it and traverse
-			this.outputs.put(input, output);
-			ObservationTree<I,O> child = new ObservationTree<I,O>(this, input, output);
-			this.children.put(input, child);
-			return child;
-		} else if (!previousOutput.equals(output)) {
-			// input is inconsistent with previous observations, throw exception
-			List<O> oldOutputChain = this.children.get(input).getOutputChain();
-			List<O> newOutputChain = this.getOutputChain();
-			List<I> inputChain = this.getInputChain();
-			newOutputChain.add(output);
-			throw new CacheInconsistencyException(toWord(inputChain), toWord(oldOutputChain), toWord(newOutputChain));
-		} else {
-			// input is consistent with previous observations, just traverse
-			return this.children.get(input);
-		}
+	@Override
+	public void addObservation(Word<I> inputs, Word<O> outputs) throws CacheInconsistencyException {
+		addObservation(inputs.asList(), outputs.asList());
 	}
 
 	/**
-	 * Add Observation to the tree
+	 * Add Observation to the tree. Walks the tree iteratively, so traces of any length can be added, and
+	 * does not allocate anything unless the observation is new or inconsistent.
 	 * @param inputs
 	 * @param outputs
 	 * @throws CacheInconsistencyException Inconsistency between new and stored observations
 	 */
-	public void addObservation(Word<I> inputs, Word<O> outputs) throws CacheInconsistencyException {
-		addObservation(inputs.asList(), outputs.asList());
+	@Override
+	public synchronized void addObservation(List<I> inputs, List<O> outputs) throws CacheInconsistencyException {
+		if (inputs.size() != outputs.size()) {
+			throw new RuntimeException("Input and output words should have the same length:\n" + inputs + "\n" + outputs);
+		}
+		int node = ROOT;
+		for (int i = 0; i < inputs.size(); i++) {
+			int inputId = internInput(inputs.get(i));
+			int outputId = internOutput(outputs.get(i));
+			int child = getChild(node, inputId);
+			if (child == NO_CHILD) {
+				// input hasn't been queried before, make a new branch for it and traverse
+				node = addChild(node, inputId, outputId);
+			} else if (parentOutputs[child] != outputId) {
+				// input is inconsistent with previous observations: the old output agrees up to this symbol
+				List<O> oldOutputChain = new ArrayList<>(outputs.subList(0, i));
+				oldOutputChain.add(outputSymbols.get(parentOutputs[child]));
+				throw new CacheInconsistencyException(toWord(inputs), toWord(oldOutputChain), toWord(outputs));
+			} else {
+				// input is consistent with previous observations, just traverse
+				node = child;
+			}
+		}
 	}
-	
-	
-	public void addObservation(List<I> inputs, List<O> outputs) throws CacheInconsistencyException {
-		if (inputs.isEmpty() && outputs.isEmpty()) {
-			return;
-		} else if (inputs.isEmpty() || outputs.isEmpty()) {
+
+	@Override
+	public synchronized void replaceObservation(List<I> inputs, List<O> outputs) {
+		if (inputs.size() != outputs.size()) {
 			throw new RuntimeException("Input and output words should have the same length:\n" + inputs + "\n" + outputs);
+		}
+		int node = ROOT;
+		for (int i = 0; i < inputs.size(); i++) {
+			int inputId = internInput(inputs.get(i));
+			int outputId = internOutput(outputs.get(i));
+			int child = getChild(node, inputId);
+			if (child != NO_CHILD && parentOutputs[child] != outputId) {
+				// cut off the inconsistent branch, and continue as if the input is new
+				removeChild(node, child);
+				child = NO_CHILD;
+			}
+			node = child == NO_CHILD ? addChild(node, inputId, outputId) : child;
+		}
+	}
+
+	@Override
+	public synchronized Word<O> getOutput(Word<I> inputs) {
+		List<O> outputChain = new ArrayList<>(inputs.size());
+		int node = ROOT;
+		for (I input : inputs) {
+			Integer inputId = inputIds.get(input);
+			if (inputId == null || getChild(node, inputId) == NO_CHILD) {
+				return null;
+			}
+			node = getChild(node, inputId);
+			outputChain.add(outputSymbols.get(parentOutputs[node]));
+		}
+		return toWord(outputChain);
+	}
+
+	@Override
+	public synchronized void forEachTrace(TraceVisitor<I,O> visitor) {
+		List<I> inputChain = new ArrayList<>();
+		List<O> outputChain = new ArrayList<>();
+		int[] nodeStack = new int[16], depthStack = new int[16];
+		int stackSize = 0;
+		nodeStack[stackSize] = ROOT;
+		depthStack[stackSize++] = 0;
+		while (stackSize > 0) {
+			int node = nodeStack[--stackSize], depth = depthStack[stackSize];
+			inputChain.subList(depth, inputChain.size()).clear();
+			outputChain.subList(depth, outputChain.size()).clear();
+			if (node != ROOT) {
+				inputChain.add(inputSymbols.get(parentInputs[node]));
+				outputChain.add(outputSymbols.get(parentOutputs[node]));
+				depth++;
+			}
+			if (stackSize + stride > nodeStack.length) {
+				nodeStack = Arrays.copyOf(nodeStack, 2 * (stackSize + stride));
+				depthStack = Arrays.copyOf(depthStack, nodeStack.length);
+			}
+			int nrChildren = 0;
+			if (rows[node] != NO_ROW) {
+				for (int inputId = 0; inputId < stride; inputId++) {
+					int child = children[rows[node] * stride + inputId];
+					if (child != NO_CHILD) {
+						nodeStack[stackSize] = child;
+						depthStack[stackSize++] = depth;
+						nrChildren++;
+					}
+				}
+			} else if (singleChildren[node] != NO_CHILD) {
+				nodeStack[stackSize] = singleChildren[node];
+				depthStack[stackSize++] = depth;
+				nrChildren++;
+			}
+			if (nrChildren == 0 && node != ROOT) {
+				visitor.visitTrace(inputChain, outputChain);
+			}
+		}
+	}
+
+	private int internInput(I input) {
+		Integer id = inputIds.get(input);
+		if (id == null) {
+			id = inputSymbols.size();
+			inputIds.put(input, id);
+			inputSymbols.add(input);
+			if (id >= stride) {
+				growStride(2 * stride);
+			}
+		}
+		return id;
+	}
+
+	private int internOutput(O output) {
+		Integer id = outputIds.get(output);
+		if (id == null) {
+			id = outputSymbols.size();
+			outputIds.put(output, id);
+			outputSymbols.add(output);
+		}
+		return id;
+	}
+
+	private int getChild(int node, int inputId) {
+		int row = rows[node];
+		if (row != NO_ROW) {
+			return children[row * stride + inputId];
+		}
+		int child = singleChildren[node];
+		return child != NO_CHILD && parentInputs[child] == inputId ? child : NO_CHILD;
+	}
+
+	private int addChild(int node, int inputId, int outputId) {
+		if (nrNodes == parentOutputs.length) {
+			int capacity = 2 * nrNodes;
+			parentOutputs = Arrays.copyOf(parentOutputs, capacity);
+			parentInputs = Arrays.copyOf(parentInputs, capacity);
+			rows = Arrays.copyOf(rows, capacity);
+			singleChildren = Arrays.copyOf(singleChildren, capacity);
+		}
+		int child = nrNodes++;
+		parentOutputs[child] = outputId;
+		parentInputs[child] = inputId;
+		rows[child] = NO_ROW;
+		singleChildren[child] = NO_CHILD;
+		if (rows[node] == NO_ROW && singleChildren[node] == NO_CHILD) {
+			singleChildren[node] = child;
 		} else {
-			I firstInput = inputs.get(0);
-			O firstOutput = outputs.get(0);
-			try {
-				this.addObservation(firstInput, firstOutput)
-					.addObservation(inputs.subList(1, inputs.size()), outputs.subList(1, outputs.size()));
-			} catch (CacheInconsistencyException e) {
-				throw new CacheInconsistencyException(toWord(inputs), e.getOldOutput(), toWord(outputs));
+			if (rows[node] == NO_ROW) {
+				// second child: move the inline child to a new row
+				int row = addRow();
+				int sibling = singleChildren[node];
+				children[row * stride + parentInputs[sibling]] = sibling;
+				rows[node] = row;
+				singleChildren[node] = NO_CHILD;
 			}
+			children[rows[node] * stride + inputId] = child;
 		}
+		return child;
 	}
-	
+
+	private void removeChild(int node, int child) {
+		if (rows[node] == NO_ROW) {
+			singleChildren[node] = NO_CHILD;
+		} else {
+			children[rows[node] * stride + parentInputs[child]] = NO_CHILD;
+		}
+		// count the nodes of the removed subtree
+		int[] stack = new int[16];
+		int stackSize = 0;
+		stack[stackSize++] = child;
+		while (stackSize > 0) {
+			int removed = stack[--stackSize];
+			nrRemovedNodes++;
+			if (stackSize + stride > stack.length) {
+				stack = Arrays.copyOf(stack, 2 * (stackSize + stride));
+			}
+			if (rows[removed] != NO_ROW) {
+				for (int inputId = 0; inputId < stride; inputId++) {
+					if (children[rows[removed] * stride + inputId] != NO_CHILD) {
+						stack[stackSize++] = children[rows[removed] * stride + inputId];
+					}
+				}
+			} else if (singleChildren[removed] != NO_CHILD) {
+				stack[stackSize++] = singleChildren[removed];
+			}
+		}
+	}
+
+	private int addRow() {
+		if ((nrRows + 1) * stride > children.length) {
+			children = Arrays.copyOf(children, 2 * (nrRows + 1) * stride);
+		}
+		return nrRows++;
+	}
+
+	/**
+	 * Re-layout the rows for a larger input alphabet. Only happens if the alphabet was not given beforehand.
+	 */
+	private void growStride(int newStride) {
+		int[] newChildren = new int[Math.max(1, nrRows) * 2 * newStride];
+		for (int row = 0; row < nrRows; row++) {
+			System.arraycopy(children, row * stride, newChildren, row * newStride, stride);
+		}
+		children = newChildren;
+		stride = newStride;
+	}
+
 	public static<T> Word<T> toWord(List<T> symbolList) {
 		return Word.fromList(symbolList);
 	}
@@ -0,0 +1,203 @@
+package basiclearner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import de.learnlib.api.EquivalenceOracle;
+import de.learnlib.api.SUL;
+import de.learnlib.oracles.DefaultQuery;
+
+/**
+ * Equivalence oracle which runs the test words of a TestWordGenerator on a pool of independent SUL instances.
+ * The workers take small chunks of words from the generator, so fast SULs test more words than slow ones.
+ * As soon as a worker finds a counterexample, the other workers stop after the word they are running, and the
+ * shortest counterexample found by then is returned. Every test word is run only until its first output which
+ * differs from the hypothesis, and the counterexample is cut off there.
+ *
+ * @param <I>
+ * @param <O>
+ */
+public class ParallelEQOracle<I,O> implements EquivalenceOracle<MealyMachine<?, I, ?, O>, I, Word<O>>, AutoCloseable {
+	public static final int DEFAULT_CHUNK_SIZE = 16;
+
+	private final List<SUL<I,O>> suls;
+	private final TestWordGenerator<I> generator;
+	private final int chunkSize;
+	private final ExecutorService executor;
+
+	/**
+	 * @param suls the SUL instances, which should behave the same and not share any state
+	 * @param generator generates the test words for every hypothesis
+	 */
+	public ParallelEQOracle(List<? extends SUL<I,O>> suls, TestWordGenerator<I> generator) {
+		this(suls, generator, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param suls the SUL instances, which should behave the same and not share any state
+	 * @param generator generates the test words for every hypothesis
+	 * @param chunkSize the number of words a worker takes from the generator at once
+	 */
+	public ParallelEQOracle(List<? extends SUL<I,O>> suls, TestWordGenerator<I> generator, int chunkSize) {
+		this.suls = new ArrayList<>(suls);
+		this.generator = generator;
+		this.chunkSize = chunkSize;
+		// a single SUL is used from the calling thread
+		this.executor = suls.size() == 1 ? null : Executors.newFixedThreadPool(suls.size(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "EQ worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public DefaultQuery<I, Word<O>> findCounterExample(final MealyMachine<?, I, ?, O> hypothesis, Collection<? extends I> inputs) {
+		final Iterator<Word<I>> words = generator.generate(hypothesis, inputs);
+		final AtomicBoolean found = new AtomicBoolean(false);
+		final List<DefaultQuery<I, Word<O>>> counterexamples = new ArrayList<>();
+		if (suls.size() == 1) {
+			testWords(suls.get(0), hypothesis, words, found, counterexamples);
+		} else {
+			List<Future<?>> results = new ArrayList<>(suls.size());
+			for (final SUL<I,O> sul : suls) {
+				results.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							testWords(sul, hypothesis, words, found, counterexamples);
+						} catch (RuntimeException e) {
+							// stop the other workers as well
+							found.set(true);
+							throw e;
+						}
+					}
+				}));
+			}
+			waitFor(results);
+		}
+		DefaultQuery<I, Word<O>> shortest = null;
+		for (DefaultQuery<I, Word<O>> counterexample : counterexamples) {
+			if (shortest == null || counterexample.getInput().length() < shortest.getInput().length()) {
+				shortest = counterexample;
+			}
+		}
+		return shortest;
+	}
+
+	/**
+	 * Test chunks of words until the words run out or a counterexample is found (by any worker)
+	 */
+	private void testWords(SUL<I,O> sul, MealyMachine<?, I, ?, O> hypothesis, Iterator<Word<I>> words,
+			AtomicBoolean found, List<DefaultQuery<I, Word<O>>> counterexamples) {
+		List<Word<I>> chunk = new ArrayList<>(chunkSize);
+		while (!found.get()) {
+			chunk.clear();
+			synchronized (words) {
+				while (chunk.size() < chunkSize && words.hasNext()) {
+					chunk.add(words.next());
+				}
+			}
+			if (chunk.isEmpty()) {
+				return;
+			}
+			for (Word<I> word : chunk) {
+				if (found.get()) {
+					return;
+				}
+				DefaultQuery<I, Word<O>> counterexample = testWord(sul, hypothesis, word);
+				if (counterexample != null) {
+					synchronized (counterexamples) {
+						counterexamples.add(counterexample);
+					}
+					found.set(true);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Run a word on the SUL until its output differs from the hypothesis. A run of which the outputs turn out to be
+	 * wrong (see NonDeterminismResolver) is repeated, like in ParallelSULOracle.
+	 * @return the counterexample up to and including the first difference, or null if there is no difference
+	 */
+	static <S,I,O> DefaultQuery<I, Word<O>> testWord(SUL<I,O> sul, MealyMachine<S, I, ?, O> hypothesis, Word<I> word) {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return runWord(sul, hypothesis, word);
+			} catch (TransientNonDeterminismException e) {
+				if (attempt >= ParallelSULOracle.MAX_ATTEMPTS) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private static <S,I,O> DefaultQuery<I, Word<O>> runWord(SUL<I,O> sul, MealyMachine<S, I, ?, O> hypothesis, Word<I> word) {
+		sul.pre();
+		try {
+			S state = hypothesis.getInitialState();
+			WordBuilder<O> output = new WordBuilder<>(word.length());
+			for (int i = 0; i < word.length(); i++) {
+				I input = word.getSymbol(i);
+				O sulOutput = sul.step(input);
+				output.append(sulOutput);
+				if (!Objects.equals(sulOutput, hypothesis.getOutput(state, input))) {
+					return new DefaultQuery<I, Word<O>>(Word.<I>epsilon(), word.prefix(i + 1), output.toWord());
+				}
+				state = hypothesis.getSuccessor(state, input);
+			}
+			return null;
+		} finally {
+			sul.post();
+		}
+	}
+
+	private static void waitFor(List<Future<?>> results) {
+		RuntimeException failure = null;
+		for (Future<?> result : results) {
+			try {
+				result.get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	public int getNrInstances() {
+		return suls.size();
+	}
+
+	/**
+	 * Stops the worker threads. The SULs themselves are not closed.
+	 */
+	@Override
+	public void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+}
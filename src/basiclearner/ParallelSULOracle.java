@@ -0,0 +1,169 @@
+package basiclearner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import de.learnlib.api.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.Query;
+import de.learnlib.api.SUL;
+
+/**
+ * Thread-safe membership oracle which spreads every batch of queries over a pool of independent SUL instances,
+ * for example several SocketSULs connected to different copies of the system. Every SUL is only used by one
+ * thread at a time. The workers take small chunks of queries from the batch, so fast SULs answer more queries
+ * than slow ones.
+ *
+ * @param <I>
+ * @param <O>
+ */
+public class ParallelSULOracle<I,O> implements MealyMembershipOracle<I,O>, AutoCloseable {
+	/** the maximum number of runs of a query of which the outputs turn out to be wrong */
+	static final int MAX_ATTEMPTS = 5;
+	/** the number of queries a worker takes from the batch at once */
+	private static final int CHUNK_SIZE = 4;
+
+	private final List<SUL<I,O>> suls;
+	private final ExecutorService executor;
+
+	/**
+	 * @param suls the SUL instances, which should behave the same and not share any state
+	 */
+	public ParallelSULOracle(List<? extends SUL<I,O>> suls) {
+		this.suls = new ArrayList<>(suls);
+		this.executor = Executors.newFixedThreadPool(suls.size(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "SUL worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+		final List<Query<I, Word<O>>> queryList = new ArrayList<>(queries);
+		int nrWorkers = Math.min(suls.size(), queryList.size());
+		if (nrWorkers <= 1) {
+			for (Query<I, Word<O>> query : queryList) {
+				answerQuery(suls.get(0), query);
+			}
+			return;
+		}
+		// the workers take small chunks of queries from the batch, so fast SULs and short queries do not leave
+		// workers idle while others still have a lot of work
+		final Iterator<Query<I, Word<O>>> remaining = queryList.iterator();
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		List<Future<?>> results = new ArrayList<>(nrWorkers);
+		for (int worker = 0; worker < nrWorkers; worker++) {
+			final SUL<I,O> sul = suls.get(worker);
+			results.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						answerQueries(sul, remaining, failed);
+					} catch (RuntimeException e) {
+						// stop the other workers as well
+						failed.set(true);
+						throw e;
+					}
+				}
+			}));
+		}
+		RuntimeException failure = null;
+		for (Future<?> result : results) {
+			try {
+				result.get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Answer chunks of queries until the queries run out or a worker fails
+	 */
+	private static <I,O> void answerQueries(SUL<I,O> sul, Iterator<Query<I, Word<O>>> queries, AtomicBoolean failed) {
+		List<Query<I, Word<O>>> chunk = new ArrayList<>(CHUNK_SIZE);
+		while (!failed.get()) {
+			chunk.clear();
+			synchronized (queries) {
+				while (chunk.size() < CHUNK_SIZE && queries.hasNext()) {
+					chunk.add(queries.next());
+				}
+			}
+			if (chunk.isEmpty()) {
+				return;
+			}
+			for (Query<I, Word<O>> query : chunk) {
+				answerQuery(sul, query);
+			}
+		}
+	}
+
+	/**
+	 * Run a single query on the given SUL, from its initial state. A query of which the outputs turn out to be
+	 * wrong (see NonDeterminismResolver) is run again, at most MAX_ATTEMPTS times in total.
+	 */
+	static <I,O> void answerQuery(SUL<I,O> sul, Query<I, Word<O>> query) {
+		for (int attempt = 1; ; attempt++) {
+			Word<O> output;
+			try {
+				output = runQuery(sul, query);
+			} catch (TransientNonDeterminismException e) {
+				if (attempt >= MAX_ATTEMPTS) {
+					throw e;
+				}
+				continue;
+			}
+			query.answer(output);
+			return;
+		}
+	}
+
+	private static <I,O> Word<O> runQuery(SUL<I,O> sul, Query<I, Word<O>> query) {
+		sul.pre();
+		try {
+			for (I input : query.getPrefix()) {
+				sul.step(input);
+			}
+			WordBuilder<O> output = new WordBuilder<>(query.getSuffix().size());
+			for (I input : query.getSuffix()) {
+				output.append(sul.step(input));
+			}
+			return output.toWord();
+		} finally {
+			sul.post();
+		}
+	}
+
+	public int getNrInstances() {
+		return suls.size();
+	}
+
+	/**
+	 * Stops the worker threads. The SULs themselves are not closed.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+}
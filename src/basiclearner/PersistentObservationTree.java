@@ -0,0 +1,81 @@
+package basiclearner;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Observation tree backed by an observation log on disk. On construction, all observations from the log
+ * are added to the tree, so that an experiment on the same SUL and alphabet can start with all observations
+ * from earlier experiments. Every observation which adds something to the tree is appended to the log.
+ * Replaced observations are appended as replacement records, so that the log is replayed to the same tree.
+ * The log is compacted when it has grown much since it was last compacted, which keeps its size bounded.
+ */
+public class PersistentObservationTree extends ObservationTree<String,String> implements Closeable {
+	/**
+	 * The log is compacted if it contains more than this factor times the number of symbols it contained
+	 * directly after the last compaction (or after opening it)
+	 */
+	public static int COMPACTION_FACTOR = 2;
+	private static final long MIN_SYMBOLS_FOR_COMPACTION = 1 << 16;
+	private final ObservationLog log;
+	private long compactedSymbols;
+
+	/**
+	 * @param logFile the file with the observations, which is created if it does not exist
+	 * @param inputAlphabet
+	 * @throws IOException if the log cannot be read
+	 * @throws CacheInconsistencyException if the log contains inconsistent observations
+	 */
+	public PersistentObservationTree(File logFile, Collection<String> inputAlphabet) throws IOException {
+		super(inputAlphabet);
+		this.log = new ObservationLog(logFile);
+		this.log.replay(new TraceVisitor<String,String>() {
+			@Override
+			public void visitTrace(List<String> inputs, List<String> outputs) {
+				PersistentObservationTree.super.addObservation(inputs, outputs);
+			}
+		}, new TraceVisitor<String,String>() {
+			@Override
+			public void visitTrace(List<String> inputs, List<String> outputs) {
+				PersistentObservationTree.super.replaceObservation(inputs, outputs);
+			}
+		});
+		this.compactedSymbols = log.getNrSymbols();
+	}
+
+	@Override
+	public synchronized void addObservation(List<String> inputs, List<String> outputs) throws CacheInconsistencyException {
+		int previousSize = size();
+		super.addObservation(inputs, outputs);
+		if (size() > previousSize) {
+			try {
+				log.append(inputs, outputs);
+				if (log.getNrSymbols() > MIN_SYMBOLS_FOR_COMPACTION && log.getNrSymbols() > COMPACTION_FACTOR * compactedSymbols) {
+					log.compact(this);
+					compactedSymbols = log.getNrSymbols();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void replaceObservation(List<String> inputs, List<String> outputs) {
+		super.replaceObservation(inputs, outputs);
+		try {
+			log.appendReplacement(inputs, outputs);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		log.close();
+	}
+}
@@ -0,0 +1,103 @@
+package basiclearner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import de.learnlib.api.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.Query;
+import de.learnlib.oracles.DefaultQuery;
+import de.learnlib.statistics.Counter;
+
+/**
+ * Scheduler between the learner and the SUL: loads every batch of queries into a trie, and only passes the maximal
+ * words of the batch (the leaves of the trie) on to the wrapped oracle. The answers to queries which are prefixes of
+ * other queries are derived from those, which saves a reset and the common prefix for each of them.
+ *
+ * @param <I>
+ * @param <O>
+ */
+public class PrefixSharingOracle<I,O> implements MealyMembershipOracle<I,O> {
+	private final MealyMembershipOracle<I,O> delegate;
+	private final Counter nrSavedResets = new Counter("resets saved by prefix sharing", "resets");
+	private final Counter nrSavedSymbols = new Counter("symbols saved by prefix sharing", "symbols");
+
+	public PrefixSharingOracle(MealyMembershipOracle<I,O> delegate) {
+		this.delegate = delegate;
+	}
+
+	private static class TrieNode<I,O> {
+		final Map<I, TrieNode<I,O>> children = new LinkedHashMap<>();
+		/** for leaves: the query sent to the wrapped oracle */
+		DefaultQuery<I, Word<O>> leafQuery;
+	}
+
+	@Override
+	public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+		TrieNode<I,O> root = new TrieNode<>();
+		List<TrieNode<I,O>> queryNodes = new ArrayList<>(queries.size());
+		long nrSymbols = 0;
+		for (Query<I, Word<O>> query : queries) {
+			TrieNode<I,O> node = root;
+			for (I input : query.getInput()) {
+				TrieNode<I,O> child = node.children.get(input);
+				if (child == null) {
+					child = new TrieNode<>();
+					node.children.put(input, child);
+				}
+				node = child;
+			}
+			queryNodes.add(node);
+			nrSymbols += query.getInput().size();
+		}
+		// every query is answered by some maximal word through its node
+		List<DefaultQuery<I, Word<O>>> leafQueries = new ArrayList<>();
+		List<DefaultQuery<I, Word<O>>> answeringQueries = new ArrayList<>(queries.size());
+		int i = 0;
+		for (Query<I, Word<O>> query : queries) {
+			TrieNode<I,O> node = queryNodes.get(i++);
+			WordBuilder<I> extension = null;
+			while (node.leafQuery == null && !node.children.isEmpty()) {
+				Map.Entry<I, TrieNode<I,O>> firstChild = node.children.entrySet().iterator().next();
+				if (extension == null) {
+					extension = new WordBuilder<>();
+				}
+				extension.append(firstChild.getKey());
+				node = firstChild.getValue();
+			}
+			if (node.leafQuery == null) {
+				Word<I> maximalWord = extension == null ? query.getInput() : query.getInput().concat(extension.toWord());
+				node.leafQuery = new DefaultQuery<>(maximalWord);
+				leafQueries.add(node.leafQuery);
+				nrSymbols -= maximalWord.size();
+			}
+			answeringQueries.add(node.leafQuery);
+		}
+		nrSavedResets.increment(queries.size() - leafQueries.size());
+		nrSavedSymbols.increment(nrSymbols);
+		delegate.processQueries(leafQueries);
+		i = 0;
+		for (Query<I, Word<O>> query : queries) {
+			Word<O> output = answeringQueries.get(i++).getOutput();
+			query.answer(output.subWord(query.getPrefix().size(), query.getInput().size()));
+		}
+	}
+
+	/**
+	 * @return counter for the number of queries answered by a longer query of the same batch
+	 */
+	public Counter getSavedResetsCounter() {
+		return nrSavedResets;
+	}
+
+	/**
+	 * @return counter for the number of symbols not sent to the wrapped oracle
+	 */
+	public Counter getSavedSymbolsCounter() {
+		return nrSavedSymbols;
+	}
+}
@@ -0,0 +1,163 @@
+package basiclearner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import de.learnlib.api.EquivalenceOracle;
+import de.learnlib.api.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.oracles.DefaultQuery;
+
+/**
+ * Equivalence oracle for learning a new version of a system of which a model was learned before. The test words
+ * of the previous model (every transition of it, followed by the words which identify the state it leads to) are
+ * queried once, before the first hypothesis is tested: this validates the previous model, and shows how many of
+ * its words the new version answers differently. As long as a hypothesis differs from the SUL on one of these
+ * words, the shortest such word is the counterexample, so that the learner quickly finds all states of the
+ * previous model which still exist. Only then are hypotheses tested by the next equivalence oracle, which looks
+ * for new behaviour.
+ *
+ * Test words with inputs which are not in the current alphabet are skipped. The suffixes returned by getSuffixes
+ * can seed the observation table of L*, which saves it most of the counterexamples.
+ */
+public class PreviousModelEQOracle implements EquivalenceOracle<MealyMachine<?, String, ?, String>, String, Word<String>> {
+	private final HypothesisSnapshot previousModel;
+	private final HypothesisStructure<String> structure;
+	private final Set<String> inputs;
+	private final MealyMembershipOracle<String,String> oracle;
+	private final EquivalenceOracle<MealyMachine<?, String, ?, String>, String, Word<String>> delegate;
+	/** the test words with the outputs of the SUL, after validation */
+	private List<DefaultQuery<String, Word<String>>> tests = null;
+	private int nrChangedWords = 0;
+
+	/**
+	 * @param previousModel the model of the previous version
+	 * @param inputs the inputs of the current version
+	 * @param oracle answers the test words of the previous model
+	 * @param delegate finds the counterexamples once the hypothesis agrees with the SUL on the test words
+	 */
+	public PreviousModelEQOracle(HypothesisSnapshot previousModel, Collection<String> inputs,
+			MealyMembershipOracle<String,String> oracle, EquivalenceOracle<MealyMachine<?, String, ?, String>, String, Word<String>> delegate) {
+		this.previousModel = previousModel;
+		this.structure = HypothesisStructure.of(previousModel);
+		this.inputs = new HashSet<>(inputs);
+		this.oracle = oracle;
+		this.delegate = delegate;
+	}
+
+	/**
+	 * @return the words which distinguish the states of the previous model (without the empty word), as far as
+	 * they only use current inputs
+	 */
+	public List<Word<String>> getSuffixes() {
+		List<Word<String>> suffixes = new ArrayList<>();
+		for (Word<String> word : structure.getCharacterizingSet()) {
+			if (!word.isEmpty() && isCurrent(word)) {
+				suffixes.add(word);
+			}
+		}
+		return suffixes;
+	}
+
+	/**
+	 * Query the test words of the previous model, if that has not been done yet, and compare the outputs of the
+	 * SUL to those of the previous model
+	 */
+	public void validate() {
+		if (tests != null) {
+			return;
+		}
+		List<DefaultQuery<String, Word<String>>> queries = new ArrayList<>();
+		for (Word<String> word : generateTestWords()) {
+			queries.add(new DefaultQuery<String, Word<String>>(word));
+		}
+		oracle.processQueries(queries);
+		for (DefaultQuery<String, Word<String>> query : queries) {
+			if (!query.getOutput().equals(computeOutput(query.getInput()))) {
+				nrChangedWords++;
+			}
+		}
+		tests = queries;
+		System.out.println("The previous model (" + previousModel.getNrStates() + " states) agrees with the SUL on "
+				+ (tests.size() - nrChangedWords) + " of its " + tests.size() + " test words");
+	}
+
+	@Override
+	public DefaultQuery<String, Word<String>> findCounterExample(MealyMachine<?, String, ?, String> hypothesis, Collection<? extends String> inputs) {
+		validate();
+		DefaultQuery<String, Word<String>> shortest = null;
+		for (DefaultQuery<String, Word<String>> test : tests) {
+			DefaultQuery<String, Word<String>> counterexample = StreamingEQOracle.findDifference(hypothesis, test.getInput(), test.getOutput());
+			if (counterexample != null && (shortest == null || counterexample.getInput().length() < shortest.getInput().length())) {
+				shortest = counterexample;
+			}
+		}
+		return shortest != null ? shortest : delegate.findCounterExample(hypothesis, inputs);
+	}
+
+	/**
+	 * @return the number of test words of the previous model, after validation
+	 */
+	public int getNrTestWords() {
+		return tests == null ? 0 : tests.size();
+	}
+
+	/**
+	 * @return the number of test words on which the SUL differs from the previous model, after validation
+	 */
+	public int getNrChangedWords() {
+		return nrChangedWords;
+	}
+
+	/**
+	 * Every transition of the previous model followed by the identifiers of its target, and the identifiers of
+	 * every state itself (the Wp-method without middle part)
+	 */
+	private List<Word<String>> generateTestWords() {
+		Set<Word<String>> words = new LinkedHashSet<>();
+		for (int state = 0; state < structure.getNrStates(); state++) {
+			Word<String> accessSequence = structure.getAccessSequence(state);
+			for (Word<String> identifier : structure.getStateIdentifier(state)) {
+				words.add(accessSequence.concat(identifier));
+			}
+			for (int input = 0; input < structure.getNrInputs(); input++) {
+				Word<String> transition = accessSequence.append(structure.getInput(input));
+				for (Word<String> identifier : structure.getStateIdentifier(structure.getSuccessor(state, input))) {
+					words.add(transition.concat(identifier));
+				}
+			}
+		}
+		List<Word<String>> testWords = new ArrayList<>();
+		for (Word<String> word : words) {
+			if (!word.isEmpty() && isCurrent(word)) {
+				testWords.add(word);
+			}
+		}
+		return testWords;
+	}
+
+	private boolean isCurrent(Word<String> word) {
+		for (String input : word) {
+			if (!inputs.contains(input)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Word<String> computeOutput(Word<String> word) {
+		List<String> outputs = new ArrayList<>(word.length());
+		int state = 0;
+		for (String input : word) {
+			int inputIndex = structure.getInputIndex(input);
+			outputs.add(previousModel.getOutput(state, inputIndex));
+			state = previousModel.getSuccessor(state, inputIndex);
+		}
+		return Word.fromList(outputs);
+	}
+}
@@ -0,0 +1,321 @@
+package basiclearner;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.learnlib.api.SUL;
+import de.learnlib.api.SULException;
+
+/**
+ * SUL for a local executable which reads an input per line on stdin, and answers every input with one line on
+ * stdout. The SUL is reset by starting a new process, which for most programs is slow. Therefore a pool of
+ * processes is started (and initialized) in the background: a reset kills the used process and takes a ready one
+ * from the pool, while a new one is started. Only if the pool is empty does pre wait for a process.
+ *
+ * Every query uses its own process, so the program does not need a reset command. Its stderr is passed on to
+ * the stderr of the learner. For a pool of SULs in BasicLearner, create a ProcessSUL per instance.
+ * With a timeout (see setTimeout), a process which does not answer in time is killed, and the step fails.
+ */
+public class ProcessSUL implements SUL<String,String>, AutoCloseable {
+	public static final int DEFAULT_POOL_SIZE = 2;
+
+	private final ProcessBuilder processBuilder;
+	private final String readyLine;
+	private final BlockingQueue<ReadyProcess> pool = new LinkedBlockingQueue<>();
+	private final ExecutorService background;
+	/** kills the processes which do not answer in time */
+	private final ScheduledExecutorService watchdog;
+	private volatile int timeoutMillis = 0;
+	private ReadyProcess current = null;
+	private volatile boolean closed = false;
+	private long nrStarted = 0, waitNanos = 0;
+
+	private static class ReadyProcess {
+		final Process process;
+		final BufferedReader output;
+		final BufferedWriter input;
+		/** the reason the process could not be started, if process is null */
+		final IOException failure;
+
+		ReadyProcess(Process process) {
+			this.process = process;
+			this.output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+			this.input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+			this.failure = null;
+		}
+
+		ReadyProcess(IOException failure) {
+			this.process = null;
+			this.output = null;
+			this.input = null;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * @param command the executable and its arguments
+	 */
+	public ProcessSUL(List<String> command) {
+		this(command, null, null, DEFAULT_POOL_SIZE);
+	}
+
+	/**
+	 * @param command the executable and its arguments
+	 * @param workingDirectory the working directory of the processes, or null for the current one
+	 * @param readyLine the line which a process prints when it is initialized and reads inputs, or null if it
+	 * reads inputs right away
+	 * @param poolSize the number of processes to keep ready
+	 */
+	public ProcessSUL(List<String> command, File workingDirectory, String readyLine, int poolSize) {
+		this(command, workingDirectory, readyLine, poolSize, 0);
+	}
+
+	/**
+	 * @param command the executable and its arguments
+	 * @param workingDirectory the working directory of the processes, or null for the current one
+	 * @param readyLine the line which a process prints when it is initialized and reads inputs, or null if it
+	 * reads inputs right away
+	 * @param poolSize the number of processes to keep ready
+	 * @param timeoutMillis the timeout, see setTimeout, which also applies to the processes started right away
+	 */
+	public ProcessSUL(List<String> command, File workingDirectory, String readyLine, int poolSize, int timeoutMillis) {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("The pool should contain at least one process");
+		}
+		this.processBuilder = new ProcessBuilder(new ArrayList<>(command))
+				.directory(workingDirectory)
+				.redirectError(ProcessBuilder.Redirect.INHERIT);
+		this.readyLine = readyLine;
+		this.timeoutMillis = timeoutMillis;
+		// start the processes in parallel, so that slow starts overlap
+		this.background = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "process starter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "process watchdog");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (int i = 0; i < poolSize; i++) {
+			startProcess();
+		}
+	}
+
+	/**
+	 * @param millis the maximum time for a process to answer an input (or to print the ready line after it is
+	 * started), after which it is killed and the step fails with a SULException; 0 to wait forever
+	 */
+	public void setTimeout(int millis) {
+		this.timeoutMillis = millis;
+	}
+
+	/**
+	 * Start a process in the background, and add it to the pool when it is ready
+	 */
+	private void startProcess() {
+		background.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (closed) {
+					return;
+				}
+				ReadyProcess process;
+				try {
+					process = new ReadyProcess(processBuilder.start());
+					if (readyLine != null) {
+						waitUntilReady(process);
+					}
+				} catch (IOException e) {
+					process = new ReadyProcess(e);
+				}
+				synchronized (ProcessSUL.this) {
+					nrStarted++;
+				}
+				pool.add(process);
+				if (closed) {
+					// close may have missed it
+					stopAll();
+				}
+			}
+		});
+	}
+
+	private void waitUntilReady(ReadyProcess process) throws IOException {
+		String line;
+		while ((line = readLine(process)) != null) {
+			if (line.equals(readyLine)) {
+				return;
+			}
+		}
+		process.process.destroy();
+		throw new IOException("Process " + processBuilder.command() + " exited before it was ready");
+	}
+
+	@Override
+	public void pre() {
+		if (closed) {
+			throw new IllegalStateException("The process SUL is closed");
+		}
+		long start = System.nanoTime();
+		ReadyProcess process;
+		try {
+			process = pool.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SULException(e);
+		}
+		synchronized (this) {
+			waitNanos += System.nanoTime() - start;
+		}
+		// keep the pool full
+		startProcess();
+		if (process.failure != null) {
+			throw new SULException(process.failure);
+		}
+		current = process;
+	}
+
+	@Override
+	public void post() {
+		if (current != null) {
+			stop(current);
+			current = null;
+		}
+	}
+
+	@Override
+	public String step(String input) throws SULException {
+		if (current == null) {
+			throw new IllegalStateException("step without pre");
+		}
+		try {
+			current.input.write(input);
+			current.input.newLine();
+			current.input.flush();
+			String output = readLine(current);
+			if (output == null) {
+				throw new IOException("Process " + processBuilder.command() + " exited after input " + input);
+			}
+			return output;
+		} catch (IOException e) {
+			throw new SULException(e);
+		}
+	}
+
+	/**
+	 * Read a line from the process, within the timeout
+	 * @return the line, or null if the process exited
+	 * @throws IOException if reading fails, or the process did not answer in time and is killed
+	 */
+	private String readLine(final ReadyProcess process) throws IOException {
+		int timeout = timeoutMillis;
+		if (timeout <= 0) {
+			return process.output.readLine();
+		}
+		final AtomicBoolean timedOut = new AtomicBoolean(false);
+		ScheduledFuture<?> kill;
+		try {
+			kill = watchdog.schedule(new Runnable() {
+				@Override
+				public void run() {
+					timedOut.set(true);
+					// closes its stdout, which ends the read
+					process.process.destroyForcibly();
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			throw new IOException("The process SUL is closed");
+		}
+		String line;
+		try {
+			line = process.output.readLine();
+		} catch (IOException e) {
+			if (!timedOut.get()) {
+				throw e;
+			}
+			line = null;
+		} finally {
+			kill.cancel(false);
+		}
+		if (timedOut.get()) {
+			throw new IOException("Process " + processBuilder.command() + " did not answer within " + timeout + " ms");
+		}
+		return line;
+	}
+
+	/**
+	 * @return the number of processes started so far
+	 */
+	public synchronized long getNrStarted() {
+		return nrStarted;
+	}
+
+	/**
+	 * @return the total time in nanoseconds pre waited for a process. If this is significant, the pool is too
+	 * small, or starting a process takes longer than a query.
+	 */
+	public synchronized long getWaitNanos() {
+		return waitNanos;
+	}
+
+	/**
+	 * Kill the process without waiting for it: its state is not needed anymore
+	 */
+	private static void stop(ReadyProcess process) {
+		if (process.process != null) {
+			process.process.destroyForcibly();
+			try {
+				process.input.close();
+			} catch (IOException e) {
+				// the pipe is already broken
+			}
+		}
+	}
+
+	private void stopAll() {
+		ReadyProcess process;
+		while ((process = pool.poll()) != null) {
+			stop(process);
+		}
+	}
+
+	/**
+	 * Stops all processes, also the ones in the pool
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		background.shutdownNow();
+		watchdog.shutdownNow();
+		if (current != null) {
+			stop(current);
+			current = null;
+		}
+		stopAll();
+	}
+}
@@ -0,0 +1,233 @@
+package basiclearner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import de.learnlib.api.SULException;
+
+/**
+ * Generated Mealy machine as SUL, to stress-test learning at realistic sizes without a real system. The machine is
+ * stored as two int-arrays (successor and output per state and input), so it can have hundreds of thousands of
+ * states. The same seed gives the same machine. Optionally, every step and reset is delayed, to simulate a real
+ * system. Inputs are named i0, i1, ..., outputs o0, o1, ...
+ * A snapshot is the current state, and restoring one takes as long as a step (instead of a reset).
+ */
+public class RandomMealySUL implements SnapshotSUL<String, String, Integer> {
+	/**
+	 * The kind of machine to generate.
+	 * RANDOM has random transitions and outputs, with every state reachable. The learned model may be smaller,
+	 * since random states are not necessarily distinguishable.
+	 * COMBINATION_LOCK only moves to the next state on one secret input per state, and back to the initial state
+	 * otherwise, which makes counterexamples very hard to find by random testing.
+	 */
+	public enum Structure { RANDOM, COMBINATION_LOCK }
+
+	/** the largest array which the JVM can allocate */
+	private static final long MAX_TRANSITIONS = Integer.MAX_VALUE - 8;
+
+	private final int nrInputs;
+	private final int[] successors, outputs;
+	private final Map<String, Integer> inputIndices;
+	private final String[] outputNames;
+	private final long stepDelayNanos, resetDelayNanos;
+	private int currentState;
+
+	/**
+	 * @param structure the kind of machine to generate
+	 * @param nrStates the number of states
+	 * @param nrInputs the number of inputs
+	 * @param nrOutputs the number of outputs (at least 2 for a combination lock)
+	 * @param seed the seed for the random generator
+	 */
+	public RandomMealySUL(Structure structure, int nrStates, int nrInputs, int nrOutputs, long seed) {
+		this(structure, nrStates, nrInputs, nrOutputs, seed, 0, 0);
+	}
+
+	/**
+	 * @param structure the kind of machine to generate
+	 * @param nrStates the number of states
+	 * @param nrInputs the number of inputs
+	 * @param nrOutputs the number of outputs (at least 2 for a combination lock)
+	 * @param seed the seed for the random generator
+	 * @param stepDelayNanos the simulated duration of every step
+	 * @param resetDelayNanos the simulated duration of every reset
+	 * @throws IllegalArgumentException if the sizes are not positive, there are too many transitions for an array,
+	 * or a combination lock has less than 2 outputs
+	 */
+	public RandomMealySUL(Structure structure, int nrStates, int nrInputs, int nrOutputs, long seed, long stepDelayNanos, long resetDelayNanos) {
+		if (nrStates < 1 || nrInputs < 1 || nrOutputs < 1) {
+			throw new IllegalArgumentException("At least one state, input and output are needed");
+		}
+		if ((long) nrStates * nrInputs > MAX_TRANSITIONS) {
+			throw new IllegalArgumentException(nrStates + " states with " + nrInputs + " inputs are more than "
+					+ MAX_TRANSITIONS + " transitions");
+		}
+		if (structure == Structure.COMBINATION_LOCK && nrOutputs < 2) {
+			throw new IllegalArgumentException("A combination lock needs at least 2 outputs");
+		}
+		this.nrInputs = nrInputs;
+		this.successors = new int[nrStates * nrInputs];
+		this.outputs = new int[nrStates * nrInputs];
+		this.inputIndices = new HashMap<>();
+		for (int input = 0; input < nrInputs; input++) {
+			inputIndices.put("i" + input, input);
+		}
+		this.outputNames = new String[nrOutputs];
+		for (int output = 0; output < nrOutputs; output++) {
+			outputNames[output] = "o" + output;
+		}
+		this.stepDelayNanos = stepDelayNanos;
+		this.resetDelayNanos = resetDelayNanos;
+		Random random = new Random(seed);
+		switch (structure) {
+			case RANDOM:
+				generateRandom(nrStates, nrOutputs, random);
+				break;
+			case COMBINATION_LOCK:
+				generateCombinationLock(nrStates, nrOutputs, random);
+				break;
+		}
+	}
+
+	/**
+	 * Copy which shares the (immutable) transition tables, for example to use in a pool of SULs
+	 */
+	private RandomMealySUL(RandomMealySUL original) {
+		this.nrInputs = original.nrInputs;
+		this.successors = original.successors;
+		this.outputs = original.outputs;
+		this.inputIndices = original.inputIndices;
+		this.outputNames = original.outputNames;
+		this.stepDelayNanos = original.stepDelayNanos;
+		this.resetDelayNanos = original.resetDelayNanos;
+	}
+
+	private void generateRandom(int nrStates, int nrOutputs, Random random) {
+		for (int transition = 0; transition < successors.length; transition++) {
+			successors[transition] = random.nextInt(nrStates);
+			outputs[transition] = random.nextInt(nrOutputs);
+		}
+		// make every state reachable, by a spanning tree of transitions from lower states: the first nrFree elements
+		// of freeTransitions are the transitions from lower states which are not in the tree yet
+		int[] freeTransitions = new int[successors.length];
+		int nrFree = 0;
+		for (int state = 1; state < nrStates; state++) {
+			for (int input = 0; input < nrInputs; input++) {
+				freeTransitions[nrFree++] = (state - 1) * nrInputs + input;
+			}
+			int index = random.nextInt(nrFree);
+			int transition = freeTransitions[index];
+			freeTransitions[index] = freeTransitions[--nrFree];
+			successors[transition] = state;
+		}
+	}
+
+	private void generateCombinationLock(int nrStates, int nrOutputs, Random random) {
+		for (int state = 0; state < nrStates; state++) {
+			int secretInput = random.nextInt(nrInputs);
+			for (int input = 0; input < nrInputs; input++) {
+				int transition = state * nrInputs + input;
+				if (state == nrStates - 1) {
+					// opened: stay open, and show some random behaviour
+					successors[transition] = state;
+					outputs[transition] = random.nextInt(nrOutputs);
+				} else if (input == secretInput) {
+					successors[transition] = state + 1;
+					outputs[transition] = 0;
+				} else {
+					successors[transition] = 0;
+					outputs[transition] = 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the inputs of the machine
+	 */
+	public List<String> getInputs() {
+		List<String> inputs = new ArrayList<>(nrInputs);
+		for (int input = 0; input < nrInputs; input++) {
+			inputs.add("i" + input);
+		}
+		return inputs;
+	}
+
+	public int getNrStates() {
+		return successors.length / nrInputs;
+	}
+
+	/**
+	 * @return a new SUL for the same machine, with its own current state
+	 */
+	public RandomMealySUL copy() {
+		return new RandomMealySUL(this);
+	}
+
+	@Override
+	public void pre() {
+		delay(resetDelayNanos);
+		currentState = 0;
+	}
+
+	@Override
+	public void post() {
+	}
+
+	@Override
+	public String step(String input) throws SULException {
+		Integer inputIndex = inputIndices.get(input);
+		if (inputIndex == null) {
+			throw new SULException(new IllegalArgumentException("Argument '" + input + "' was not handled"));
+		}
+		delay(stepDelayNanos);
+		int transition = currentState * nrInputs + inputIndex;
+		currentState = successors[transition];
+		return outputNames[outputs[transition]];
+	}
+
+	@Override
+	public boolean canSnapshot() {
+		return true;
+	}
+
+	@Override
+	public Integer snapshot() {
+		return currentState;
+	}
+
+	@Override
+	public void restore(Integer snapshot) {
+		delay(stepDelayNanos);
+		currentState = snapshot;
+	}
+
+	@Override
+	public void release(Integer snapshot) {
+	}
+
+	@Override
+	public long getSize(Integer snapshot) {
+		return 16;
+	}
+
+	private static void delay(long nanos) {
+		if (nanos > 0) {
+			long deadline = System.nanoTime() + nanos;
+			long remaining = nanos;
+			while (remaining > 0) {
+				LockSupport.parkNanos(remaining);
+				remaining = deadline - System.nanoTime();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RandomMealySUL with " + getNrStates() + " states, " + nrInputs + " inputs, " + outputNames.length + " outputs";
+	}
+}
@@ -0,0 +1,62 @@
+package basiclearner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+/**
+ * Random test words, like a random walk which is cut into words at every reset: after every input, the word
+ * ends with the given chance. Stops when the given number of symbols has been generated. Unlike a random walk,
+ * the words can be tested independently, for example in parallel.
+ *
+ * @param <I> the input type of the test words
+ */
+public class RandomWordGenerator<I> implements TestWordGenerator<I> {
+	private final double chanceOfResetting;
+	private final long nrSymbols;
+	private final Random random;
+
+	/**
+	 * @param chanceOfResetting the chance to end a word after every input
+	 * @param nrSymbols the number of symbols to generate in total, for every hypothesis
+	 * @param random the random generator, which is used for all hypotheses
+	 */
+	public RandomWordGenerator(double chanceOfResetting, long nrSymbols, Random random) {
+		this.chanceOfResetting = chanceOfResetting;
+		this.nrSymbols = nrSymbols;
+		this.random = random;
+	}
+
+	@Override
+	public Iterator<Word<I>> generate(MealyMachine<?, I, ?, ?> hypothesis, Collection<? extends I> inputs) {
+		final List<I> inputList = new ArrayList<>(inputs);
+		return new Iterator<Word<I>>() {
+			private long remainingSymbols = inputList.isEmpty() ? 0 : nrSymbols;
+
+			@Override
+			public boolean hasNext() {
+				return remainingSymbols > 0;
+			}
+
+			@Override
+			public Word<I> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				WordBuilder<I> word = new WordBuilder<>();
+				do {
+					word.append(inputList.get(random.nextInt(inputList.size())));
+					remainingSymbols--;
+				} while (remainingSymbols > 0 && random.nextDouble() >= chanceOfResetting);
+				return word.toWord();
+			}
+		};
+	}
+}
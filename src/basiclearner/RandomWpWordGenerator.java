@@ -0,0 +1,82 @@
+package basiclearner;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+/**
+ * Random samples from the test space of the Wp-method, under a budget: every word is the access sequence of a
+ * random state, a random middle part of geometrically distributed length, and a random word from the identifier of
+ * the state reached. Unlike the Wp-method, the cost does not explode with the length of the middle part, and unlike
+ * a random walk, every word ends in a check of the state it reached. Stops when the number of generated symbols or
+ * words, or the time since the start of generating, exceeds its limit.
+ *
+ * @param <I> the input type of the test words
+ */
+public class RandomWpWordGenerator<I> implements TestWordGenerator<I> {
+	private final double expectedMiddleLength;
+	private final long maxSymbols, maxWords, maxMillis;
+	private final Random random;
+
+	/**
+	 * @param expectedMiddleLength the expected length of the middle part of the words
+	 * @param maxSymbols the maximum number of symbols in all words for a hypothesis, or 0 for no limit
+	 * @param maxWords the maximum number of words for a hypothesis, or 0 for no limit
+	 * @param maxMillis the maximum time to generate words for a hypothesis (including testing them), or 0 for no limit
+	 * @param random the random generator, which is used for all hypotheses
+	 */
+	public RandomWpWordGenerator(double expectedMiddleLength, long maxSymbols, long maxWords, long maxMillis, Random random) {
+		if (maxSymbols <= 0 && maxWords <= 0 && maxMillis <= 0) {
+			throw new IllegalArgumentException("At least one limit is needed, otherwise testing never ends");
+		}
+		this.expectedMiddleLength = expectedMiddleLength;
+		this.maxSymbols = maxSymbols;
+		this.maxWords = maxWords;
+		this.maxMillis = maxMillis;
+		this.random = random;
+	}
+
+	@Override
+	public Iterator<Word<I>> generate(MealyMachine<?, I, ?, ?> hypothesis, Collection<? extends I> inputs) {
+		final HypothesisStructure<I> structure = new HypothesisStructure<>(hypothesis, inputs);
+		final long deadline = System.nanoTime() + maxMillis * 1000000;
+		return new Iterator<Word<I>>() {
+			private long nrSymbols = 0, nrWords = 0;
+
+			@Override
+			public boolean hasNext() {
+				return structure.getNrInputs() > 0
+						&& (maxSymbols <= 0 || nrSymbols < maxSymbols)
+						&& (maxWords <= 0 || nrWords < maxWords)
+						&& (maxMillis <= 0 || System.nanoTime() - deadline < 0);
+			}
+
+			@Override
+			public Word<I> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int state = random.nextInt(structure.getNrStates());
+				WordBuilder<I> word = new WordBuilder<>();
+				word.append(structure.getAccessSequence(state));
+				// geometric distribution: continue with chance expected / (expected + 1)
+				while (random.nextDouble() * (expectedMiddleLength + 1) < expectedMiddleLength) {
+					int input = random.nextInt(structure.getNrInputs());
+					word.append(structure.getInput(input));
+					state = structure.getSuccessor(state, input);
+				}
+				List<Word<I>> identifier = structure.getStateIdentifier(state);
+				word.append(identifier.get(random.nextInt(identifier.size())));
+				nrSymbols += word.size();
+				nrWords++;
+				return word.toWord();
+			}
+		};
+	}
+}
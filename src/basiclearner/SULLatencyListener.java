@@ -0,0 +1,16 @@
+package basiclearner;
+
+/**
+ * Receives the duration of every step and reset of a SUL, for example to record statistics
+ */
+public interface SULLatencyListener {
+	/**
+	 * @param nanos the duration of one step, in nanoseconds
+	 */
+	void stepCompleted(long nanos);
+
+	/**
+	 * @param nanos the duration of one reset, in nanoseconds
+	 */
+	void resetCompleted(long nanos);
+}
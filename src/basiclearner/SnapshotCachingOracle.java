@@ -0,0 +1,226 @@
+package basiclearner;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import de.learnlib.api.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.Query;
+import de.learnlib.statistics.Counter;
+
+/**
+ * Membership oracle for a SnapshotSUL, which saves the state of the SUL after prefixes that are used by many
+ * queries, and starts later queries from the deepest saved state on their path instead of from the initial state.
+ * A prefix is saved when a query shares it with the previous query, or when it is the prefix of the query (e.g.
+ * the row of an observation table); queries arrive grouped by prefix from learners and from a PrefixSharingOracle,
+ * so this finds the prefixes worth saving without keeping statistics.
+ *
+ * The snapshots are kept in a trie, together with the outputs of their prefix. When their total size exceeds the
+ * memory budget, the least recently used snapshots are released. Not thread-safe, like the SUL itself.
+ *
+ * @param <I>
+ * @param <O>
+ * @param <S> the type of the snapshots
+ */
+public class SnapshotCachingOracle<I,O,S> implements MealyMembershipOracle<I,O> {
+	/** shorter prefixes are not worth a snapshot */
+	public static final int DEFAULT_MIN_DEPTH = 2;
+
+	private final SnapshotSUL<I,O,S> sul;
+	private final long memoryBudget;
+	private final int minDepth;
+	private final Counter nrSymbols, nrResets;
+	private final Counter nrSnapshots = new Counter("snapshots taken", "snapshots");
+	private final Counter nrRestores = new Counter("snapshots restored", "restores");
+	private final Counter nrReleased = new Counter("snapshots released for the memory budget", "snapshots");
+	private final Counter nrSavedSymbols = new Counter("symbols saved by snapshots", "symbols");
+	private final Node<I,O,S> root = new Node<>(null, null);
+	/** the nodes with a snapshot, least recently used first */
+	private final LinkedHashMap<Node<I,O,S>, Node<I,O,S>> snapshotNodes = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryUsed = 0;
+	private Word<I> previousInput = Word.epsilon();
+
+	private static class Node<I,O,S> {
+		final Node<I,O,S> parent;
+		final I input;
+		final Map<I, Node<I,O,S>> children = new HashMap<>();
+		/** the snapshot after the inputs to this node, or null */
+		S snapshot;
+		/** the outputs for the inputs to this node, if it has a snapshot */
+		Word<O> output;
+		long size;
+
+		Node(Node<I,O,S> parent, I input) {
+			this.parent = parent;
+			this.input = input;
+		}
+	}
+
+	/**
+	 * @param sul the SUL, which should not be used by anything else during processQueries
+	 * @param memoryBudget the maximum total size of the snapshots, see SnapshotSUL.getSize
+	 */
+	public SnapshotCachingOracle(SnapshotSUL<I,O,S> sul, long memoryBudget) {
+		this(sul, memoryBudget, DEFAULT_MIN_DEPTH, null, null);
+	}
+
+	/**
+	 * @param sul the SUL, which should not be used by anything else during processQueries
+	 * @param memoryBudget the maximum total size of the snapshots, see SnapshotSUL.getSize
+	 * @param minDepth the minimum length of a prefix to save a snapshot for
+	 * @param nrSymbols counts the symbols sent to the SUL, or null
+	 * @param nrResets counts the resets of the SUL (not the restores), or null
+	 */
+	public SnapshotCachingOracle(SnapshotSUL<I,O,S> sul, long memoryBudget, int minDepth, Counter nrSymbols, Counter nrResets) {
+		this.sul = sul;
+		this.memoryBudget = memoryBudget;
+		this.minDepth = Math.max(1, minDepth);
+		this.nrSymbols = nrSymbols;
+		this.nrResets = nrResets;
+	}
+
+	@Override
+	public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+		for (Query<I, Word<O>> query : queries) {
+			answerQuery(query);
+		}
+	}
+
+	private void answerQuery(Query<I, Word<O>> query) {
+		Word<I> input = query.getInput();
+		int prefixLength = query.getPrefix().length();
+		// the deepest snapshot on the path of the query
+		Node<I,O,S> restoreNode = null, node = root;
+		int restoreDepth = 0;
+		for (int i = 0; i < input.length() && node != null; i++) {
+			node = node.children.get(input.getSymbol(i));
+			if (node != null && node.snapshot != null) {
+				restoreNode = node;
+				restoreDepth = i + 1;
+			}
+		}
+		int snapshotDepth = Math.max(getCommonPrefixLength(previousInput, input), prefixLength);
+		if (snapshotDepth <= restoreDepth || snapshotDepth < minDepth) {
+			snapshotDepth = -1;
+		}
+		previousInput = input;
+
+		WordBuilder<O> output = new WordBuilder<>(input.length());
+		if (restoreNode != null) {
+			// marks the snapshot as recently used
+			snapshotNodes.get(restoreNode);
+			sul.restore(restoreNode.snapshot);
+			output.append(restoreNode.output);
+			nrRestores.increment();
+			nrSavedSymbols.increment(restoreDepth);
+		} else {
+			sul.pre();
+			if (nrResets != null) {
+				nrResets.increment();
+			}
+		}
+		try {
+			for (int i = restoreDepth; i < input.length(); i++) {
+				if (i == snapshotDepth) {
+					addSnapshot(input.prefix(i), output.toWord());
+				}
+				output.append(sul.step(input.getSymbol(i)));
+			}
+			if (snapshotDepth == input.length()) {
+				addSnapshot(input, output.toWord());
+			}
+			if (nrSymbols != null) {
+				nrSymbols.increment(input.length() - restoreDepth);
+			}
+		} finally {
+			sul.post();
+		}
+		// release snapshots only between queries, so that the SUL is not disturbed during one
+		while (memoryUsed > memoryBudget) {
+			releaseSnapshot(snapshotNodes.keySet().iterator().next());
+			nrReleased.increment();
+		}
+		query.answer(output.toWord().subWord(prefixLength));
+	}
+
+	private void addSnapshot(Word<I> inputs, Word<O> outputs) {
+		S snapshot = sul.snapshot();
+		nrSnapshots.increment();
+		long size = sul.getSize(snapshot);
+		if (size > memoryBudget) {
+			sul.release(snapshot);
+			return;
+		}
+		Node<I,O,S> node = root;
+		for (I input : inputs) {
+			Node<I,O,S> child = node.children.get(input);
+			if (child == null) {
+				child = new Node<>(node, input);
+				node.children.put(input, child);
+			}
+			node = child;
+		}
+		node.snapshot = snapshot;
+		node.output = outputs;
+		node.size = size;
+		snapshotNodes.put(node, node);
+		memoryUsed += size;
+	}
+
+	private void releaseSnapshot(Node<I,O,S> node) {
+		snapshotNodes.remove(node);
+		sul.release(node.snapshot);
+		memoryUsed -= node.size;
+		node.snapshot = null;
+		node.output = null;
+		// remove the path to the node as far as it is not needed for other snapshots
+		while (node != root && node.snapshot == null && node.children.isEmpty()) {
+			node.parent.children.remove(node.input);
+			node = node.parent;
+		}
+	}
+
+	private static <I> int getCommonPrefixLength(Word<I> word1, Word<I> word2) {
+		int length = 0;
+		while (length < word1.length() && length < word2.length() && word1.getSymbol(length).equals(word2.getSymbol(length))) {
+			length++;
+		}
+		return length;
+	}
+
+	/**
+	 * Release all snapshots, e.g. before the SUL is closed
+	 */
+	public void clear() {
+		while (!snapshotNodes.isEmpty()) {
+			releaseSnapshot(snapshotNodes.keySet().iterator().next());
+		}
+		previousInput = Word.epsilon();
+	}
+
+	/**
+	 * @return the total size of the snapshots which are kept
+	 */
+	public long getMemoryUsed() {
+		return memoryUsed;
+	}
+
+	public Counter getSnapshotCounter() {
+		return nrSnapshots;
+	}
+
+	public Counter getRestoreCounter() {
+		return nrRestores;
+	}
+
+	public Counter getReleasedCounter() {
+		return nrReleased;
+	}
+
+	public Counter getSavedSymbolsCounter() {
+		return nrSavedSymbols;
+	}
+}
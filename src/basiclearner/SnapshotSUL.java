@@ -0,0 +1,47 @@
+package basiclearner;
+
+import de.learnlib.api.SUL;
+import de.learnlib.api.SULException;
+
+/**
+ * Extension of the SUL contract for systems which can save their state and return to it later, e.g. a virtual
+ * machine, a process which can be forked, or a simulator. A query may then start with restore instead of pre, to
+ * continue from a saved state instead of replaying all inputs from the initial state (see SnapshotCachingOracle).
+ *
+ * @param <I>
+ * @param <O>
+ * @param <S> the type of the snapshots
+ */
+public interface SnapshotSUL<I,O,S> extends SUL<I,O> {
+	/**
+	 * @return whether this instance can save its state: an adapter (e.g. SocketSUL) can only do so if the system
+	 * behind it supports it, and the other methods should only be called if it can
+	 */
+	boolean canSnapshot();
+
+	/**
+	 * Save the current state, between pre (or restore) and post
+	 * @return the snapshot, which stays valid until it is released
+	 * @throws SULException
+	 */
+	S snapshot() throws SULException;
+
+	/**
+	 * Start a query in the state of a snapshot: called instead of pre, and followed by steps and post as usual
+	 * @param snapshot
+	 * @throws SULException
+	 */
+	void restore(S snapshot) throws SULException;
+
+	/**
+	 * Free the resources of a snapshot, which is not used anymore
+	 * @param snapshot
+	 */
+	void release(S snapshot);
+
+	/**
+	 * @return the estimated memory used by the snapshot in bytes (also if it is stored by the system itself), for
+	 * the memory budget of a snapshot cache
+	 */
+	long getSize(S snapshot);
+}
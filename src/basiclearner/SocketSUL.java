@@ -5,10 +5,16 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
 
-import de.learnlib.api.SUL;
 import de.learnlib.api.SULException;
 
 /**
@@ -17,14 +23,30 @@ import de.learnlib.api.SULException;
  * As an example, type into a unix terminal "nc -vl {ip} {port}" (where {ip} and
  * {port} are the chosen values), and run this socketSUL. You can now control the
  * SUL through the terminal.
+ *
+ * Systems which can save their state may also support the snapshot commands, which are only sent if they are
+ * enabled with setSnapshotsEnabled and snapshots are used (see SnapshotCachingOracle): SNAPSHOT_CMD is answered with a line with an id for the current state,
+ * RESTORE_CMD followed by a space and an id starts a query in that state (after the reset command), and
+ * RELEASE_CMD followed by a space and an id frees a snapshot. The last two are not answered. After restoring an
+ * unknown id, the system answers every input of that query with UNKNOWN_SNAPSHOT, which makes the step fail.
  * @author Ramon Janssen
  */
-public class SocketSUL implements SUL<String, String>, AutoCloseable {
+public class SocketSUL implements SnapshotSUL<String, String, String>, AutoCloseable {
+	public static final String SNAPSHOT_CMD = "snapshot", RESTORE_CMD = "restore", RELEASE_CMD = "release";
+	public static final String UNKNOWN_SNAPSHOT = "unknown snapshot";
+	/**
+	 * The estimated memory of a snapshot in bytes, as the system stores them itself
+	 */
+	public static long SNAPSHOT_SIZE = 1 << 20;
+
 	private final BufferedReader SULoutput;
 	private final PrintWriter SULinput;
 	private final Socket socket;
 	private final boolean extraNewLine;
 	private final String resetCmd;
+	private boolean snapshotsEnabled = false;
+	/** the snapshot from which the current query started, or null */
+	private String restoredSnapshot = null;
 	
 	/**
 	 * Socket-interface for SUTs. Connects to a SUT (or test-adapter)
@@ -36,7 +58,23 @@ public class SocketSUL implements SUL<String, String>, AutoCloseable {
 	 * @throws IOException
 	 */
 	public SocketSUL(InetAddress ip, int port, boolean extraNewLine, String resetCmd) throws UnknownHostException, IOException {
-		this.socket = new Socket(ip, port);
+		this(ip, port, extraNewLine, resetCmd, 0);
+	}
+
+	/**
+	 * Socket-interface for SUTs, which gives up connecting after a timeout
+	 * @param ip the ip-address, for example InetAddress.getLoopbackAddress() for localhost
+	 * @param port the tcp-port
+	 * @param extraNewLine whether to print a newline after every input to the SUT
+	 * @param resetCmd the command to send for resetting the SUT
+	 * @param connectTimeoutMillis the maximum time to connect, or 0 to wait as long as the system does
+	 * @throws IOException if connecting fails, or takes too long
+	 */
+	public SocketSUL(InetAddress ip, int port, boolean extraNewLine, String resetCmd, int connectTimeoutMillis) throws IOException {
+		this.socket = new Socket();
+		this.socket.connect(new InetSocketAddress(ip, port), connectTimeoutMillis);
+		// every input waits for its output, so delaying small writes (Nagle's algorithm) only adds latency
+		this.socket.setTcpNoDelay(true);
 		this.SULoutput = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 		this.SULinput = new PrintWriter(socket.getOutputStream(), true);
 		this.extraNewLine = extraNewLine;
@@ -45,12 +83,8 @@ public class SocketSUL implements SUL<String, String>, AutoCloseable {
 	
 	@Override
 	public void post() {
-		if (extraNewLine) {
-			this.SULinput.write(this.resetCmd + System.lineSeparator());
-		} else {
-			this.SULinput.write(this.resetCmd);
-		}
-		this.SULinput.flush();
+		send(this.resetCmd);
+		restoredSnapshot = null;
 	}
 
 	@Override
@@ -60,19 +94,138 @@ public class SocketSUL implements SUL<String, String>, AutoCloseable {
 
 	@Override
 	public String step(String input) throws SULException {
-		if (extraNewLine) {
-			this.SULinput.write(input + System.lineSeparator());
-		} else {
-			this.SULinput.write(input);
+		send(input);
+		try {
+			String output = this.SULoutput.readLine();
+			if (restoredSnapshot != null && UNKNOWN_SNAPSHOT.equals(output)) {
+				throw new IOException("SUL does not know snapshot " + restoredSnapshot);
+			}
+			return output;
+		} catch (IOException e) {
+			throw new SULException(e);
 		}
-		this.SULinput.flush();
+	}
+
+	/**
+	 * @param snapshotsEnabled whether the system supports the snapshot commands; otherwise they would be taken as
+	 * inputs, so they are only sent if this is set
+	 */
+	public void setSnapshotsEnabled(boolean snapshotsEnabled) {
+		this.snapshotsEnabled = snapshotsEnabled;
+	}
+
+	@Override
+	public boolean canSnapshot() {
+		return snapshotsEnabled;
+	}
+
+	@Override
+	public String snapshot() throws SULException {
+		checkSnapshotsEnabled();
+		send(SNAPSHOT_CMD);
 		try {
-			return this.SULoutput.readLine();
+			String id = this.SULoutput.readLine();
+			if (id == null) {
+				throw new IOException("Connection closed by SUL");
+			}
+			return id;
 		} catch (IOException e) {
 			throw new SULException(e);
 		}
 	}
 
+	@Override
+	public void restore(String snapshot) throws SULException {
+		checkSnapshotsEnabled();
+		send(RESTORE_CMD + " " + snapshot);
+		restoredSnapshot = snapshot;
+	}
+
+	@Override
+	public void release(String snapshot) {
+		send(RELEASE_CMD + " " + snapshot);
+	}
+
+	@Override
+	public long getSize(String snapshot) {
+		return SNAPSHOT_SIZE;
+	}
+
+	private void checkSnapshotsEnabled() {
+		if (!snapshotsEnabled) {
+			throw new IllegalStateException("The snapshot commands are not enabled for this SUL");
+		}
+	}
+
+	private void send(String command) {
+		if (extraNewLine) {
+			this.SULinput.write(command + System.lineSeparator());
+		} else {
+			this.SULinput.write(command);
+		}
+		this.SULinput.flush();
+	}
+
+	/**
+	 * Runs a batch of queries, each from the initial state, with as few network round trips as possible: the inputs
+	 * of many queries (separated by reset commands) are sent in one write, after which all outputs are read.
+	 * This only works if every input and the reset command are followed by a newline, and if the SUL answers every
+	 * input with exactly one line (the reset command is not answered), the same protocol as step and post.
+	 * @param inputWords the queries
+	 * @param maxSymbolsPerWrite the maximum number of inputs to send before reading their outputs, to bound the
+	 * amount of data in the network buffers (the SUL may block writing when they are full)
+	 * @return the output words, in the same order as the queries
+	 * @throws SULException if the connection fails
+	 */
+	public List<Word<String>> runQueries(List<Word<String>> inputWords, int maxSymbolsPerWrite) throws SULException {
+		if (!extraNewLine) {
+			throw new IllegalStateException("Running queries in batches requires a newline after every input");
+		}
+		List<Word<String>> outputWords = new ArrayList<>(inputWords.size());
+		int batchStart = 0;
+		while (batchStart < inputWords.size()) {
+			int batchEnd = batchStart, batchSymbols = 0;
+			StringBuilder batch = new StringBuilder();
+			do {
+				for (String input : inputWords.get(batchEnd)) {
+					batch.append(input).append(System.lineSeparator());
+				}
+				batch.append(this.resetCmd).append(System.lineSeparator());
+				batchSymbols += inputWords.get(batchEnd).size();
+				batchEnd++;
+			} while (batchEnd < inputWords.size() && batchSymbols + inputWords.get(batchEnd).size() <= maxSymbolsPerWrite);
+			this.SULinput.write(batch.toString());
+			this.SULinput.flush();
+			try {
+				for (int query = batchStart; query < batchEnd; query++) {
+					WordBuilder<String> outputWord = new WordBuilder<>(inputWords.get(query).size());
+					for (int i = 0; i < inputWords.get(query).size(); i++) {
+						String output = this.SULoutput.readLine();
+						if (output == null) {
+							throw new IOException("Connection closed by SUL");
+						}
+						outputWord.append(output);
+					}
+					outputWords.add(outputWord.toWord());
+				}
+			} catch (IOException e) {
+				throw new SULException(e);
+			}
+			batchStart = batchEnd;
+		}
+		return outputWords;
+	}
+
+	/**
+	 * Let reading an output fail with a SULException after the given time, instead of waiting forever for a SUL
+	 * which hangs
+	 * @param millis the timeout, 0 for none
+	 * @throws SocketException
+	 */
+	public void setTimeout(int millis) throws SocketException {
+		this.socket.setSoTimeout(millis);
+	}
+
 	@Override
 	public void close() throws Exception {
 		this.socket.close();
@@ -0,0 +1,121 @@
+package basiclearner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.learnlib.api.SUL;
+
+/**
+ * Local stand-in for a test adapter: serves a SUL in Java code over TCP, with the protocol of SocketSUL (with
+ * extraNewLine set). Every input line is answered with one output line, the reset command is not answered.
+ * Outputs are only flushed when no more inputs are waiting, so that batches of queries cost few network writes.
+ * Useful for trying out the socket-based setups without a real system. If the SUL is a SnapshotSUL, the snapshot
+ * commands of SocketSUL are supported as well.
+ */
+public class SocketSULAdapter implements Runnable, AutoCloseable {
+	private final SUL<String,String> sul;
+	private final ServerSocket serverSocket;
+	private final String resetCmd;
+
+	/**
+	 * @param sul the SUL to serve
+	 * @param port the tcp-port, or 0 to pick a free port
+	 * @param resetCmd the command which resets the SUL
+	 * @throws IOException
+	 */
+	public SocketSULAdapter(SUL<String,String> sul, int port, String resetCmd) throws IOException {
+		this.sul = sul;
+		this.serverSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+		this.resetCmd = resetCmd;
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Serves connections one after another, until the adapter is closed
+	 */
+	@Override
+	public void run() {
+		while (!serverSocket.isClosed()) {
+			try (Socket socket = serverSocket.accept()) {
+				socket.setTcpNoDelay(true);
+				serve(socket);
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					System.err.println("Connection to SUL adapter failed: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private void serve(Socket socket) throws IOException {
+		BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+		PrintWriter output = new PrintWriter(socket.getOutputStream(), false);
+		@SuppressWarnings("unchecked")
+		SnapshotSUL<String,String,Object> snapshotSul = sul instanceof SnapshotSUL && ((SnapshotSUL<?,?,?>) sul).canSnapshot()
+				? (SnapshotSUL<String,String,Object>) sul : null;
+		Map<String, Object> snapshots = new HashMap<>();
+		int nextSnapshotId = 0;
+		// whether the current query was restored from an unknown snapshot
+		boolean unknownSnapshot = false;
+		sul.pre();
+		String line;
+		while ((line = input.readLine()) != null) {
+			if (line.equals(resetCmd)) {
+				sul.post();
+				sul.pre();
+				unknownSnapshot = false;
+			} else if (snapshotSul != null && line.equals(SocketSUL.SNAPSHOT_CMD)) {
+				String id = Integer.toString(nextSnapshotId++);
+				snapshots.put(id, snapshotSul.snapshot());
+				output.write(id + System.lineSeparator());
+			} else if (snapshotSul != null && line.startsWith(SocketSUL.RESTORE_CMD + " ")) {
+				// a query from a snapshot comes right after a reset, which has already started a query
+				sul.post();
+				Object snapshot = snapshots.get(line.substring(SocketSUL.RESTORE_CMD.length() + 1));
+				unknownSnapshot = snapshot == null;
+				if (unknownSnapshot) {
+					sul.pre();
+				} else {
+					snapshotSul.restore(snapshot);
+				}
+			} else if (snapshotSul != null && line.startsWith(SocketSUL.RELEASE_CMD + " ")) {
+				Object snapshot = snapshots.remove(line.substring(SocketSUL.RELEASE_CMD.length() + 1));
+				if (snapshot != null) {
+					snapshotSul.release(snapshot);
+				}
+			} else if (unknownSnapshot) {
+				output.write(SocketSUL.UNKNOWN_SNAPSHOT + System.lineSeparator());
+			} else {
+				output.write(sul.step(line) + System.lineSeparator());
+			}
+			if (!input.ready()) {
+				output.flush();
+			}
+		}
+		sul.post();
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+
+	/**
+	 * Serves the ExampleSUL on the given port, with reset command "reset"
+	 * @param args the port
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		new SocketSULAdapter(new ExampleSUL(), Integer.parseInt(args[0]), "reset").run();
+	}
+}
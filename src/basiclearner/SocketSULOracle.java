@@ -0,0 +1,62 @@
+package basiclearner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import net.automatalib.words.Word;
+import de.learnlib.api.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.Query;
+import de.learnlib.statistics.Counter;
+
+/**
+ * Membership oracle which sends whole batches of queries to a SocketSUL at once, instead of one input at a time,
+ * so that a batch costs a few network round trips instead of one per input. Wrap it in an ObservationCacheOracle
+ * to check for non-determinism.
+ */
+public class SocketSULOracle implements MealyMembershipOracle<String,String> {
+	/**
+	 * The default maximum number of inputs to send to the SUL before reading the outputs
+	 */
+	public static int DEFAULT_SYMBOLS_PER_WRITE = 1000;
+	private final SocketSUL sul;
+	private final int maxSymbolsPerWrite;
+	private final Counter nrSymbols = new Counter("symbol counter", "symbols");
+	private final Counter nrResets = new Counter("reset counter", "resets");
+
+	public SocketSULOracle(SocketSUL sul) {
+		this(sul, DEFAULT_SYMBOLS_PER_WRITE);
+	}
+
+	/**
+	 * @param sul the SUL, which should be constructed with extraNewLine set
+	 * @param maxSymbolsPerWrite the maximum number of inputs to send before reading the outputs
+	 */
+	public SocketSULOracle(SocketSUL sul, int maxSymbolsPerWrite) {
+		this.sul = sul;
+		this.maxSymbolsPerWrite = maxSymbolsPerWrite;
+	}
+
+	@Override
+	public void processQueries(Collection<? extends Query<String, Word<String>>> queries) {
+		List<Word<String>> inputWords = new ArrayList<>(queries.size());
+		for (Query<String, Word<String>> query : queries) {
+			inputWords.add(query.getInput());
+			nrSymbols.increment(query.getInput().size());
+			nrResets.increment();
+		}
+		List<Word<String>> outputWords = sul.runQueries(inputWords, maxSymbolsPerWrite);
+		int i = 0;
+		for (Query<String, Word<String>> query : queries) {
+			query.answer(outputWords.get(i++).suffix(query.getSuffix().size()));
+		}
+	}
+
+	public Counter getSymbolCounter() {
+		return nrSymbols;
+	}
+
+	public Counter getResetCounter() {
+		return nrResets;
+	}
+}
@@ -0,0 +1,616 @@
+package basiclearner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.automatalib.words.Word;
+
+/**
+ * Observation tree with a bound on the number of nodes in memory, for experiments which run too long to keep all
+ * observations in memory. When the bound is exceeded, the subtrees which have not been accessed for the longest
+ * time (e.g. old random walks) are written to a spill file, and only their root stays in memory. A spilled subtree
+ * is read back as soon as an observation passes through it, so that checking for non-determinism and answering
+ * queries work as with a complete tree, only slower for cold observations. Only subtrees of limited size are spilled,
+ * so that the upper levels of the tree stay in memory and reading back is quick. A subtree may contain the roots
+ * of subtrees which were spilled before: its segment refers to their segments, which are only read back when an
+ * observation passes through them. So also a tree which keeps growing stays within the bound.
+ *
+ * Every walk through the tree marks the nodes on it with the time of access, so that the access time of a node is
+ * that of the most recent access in its subtree. Spilled subtrees are stored as segments, which are appended to
+ * the spill file; the file is compacted when most of it consists of segments which were read back.
+ * The spill file is temporary, and deleted by close.
+ *
+ * @param <I> the input type of the observations
+ * @param <O> the output type of the observations
+ */
+public class SpillingObservationTree<I,O> implements ObservationCache<I,O>, Closeable {
+	/** smaller subtrees are only spilled if spilling the larger ones does not free enough memory */
+	public static int MIN_SPILLED_NODES = 64;
+	/**
+	 * larger subtrees are not spilled as a whole, since every access to them would read them all back (unless a
+	 * node has more children than this, which are then spilled with the node)
+	 */
+	public static int MAX_SPILLED_NODES = 4096;
+	/** spilling frees memory until this fraction of the bound is in use, so that it does not happen at every access */
+	public static double SPILL_TARGET = 0.75;
+	private static final long MIN_FILE_SIZE_FOR_COMPACTION = 1 << 24;
+	private static final int NO_INPUT = -1;
+	/** the number of children of a node in a segment which is the root of another segment */
+	private static final int SPILLED = -1;
+
+	private final Map<I, Integer> inputIds = new HashMap<>();
+	private final List<I> inputSymbols = new ArrayList<>();
+	private final Map<O, Integer> outputIds = new HashMap<>();
+	private final List<O> outputSymbols = new ArrayList<>();
+	private final Node root = new Node(-1);
+	private final long maxResidentNodes;
+	private final File spillFile;
+	private RandomAccessFile spillData;
+	/** the spilled nodes in memory (not those in the segments of other spilled nodes), for compaction */
+	private final Set<Node> spilledNodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+	private long nrNodes = 1, nrResidentNodes = 1, liveBytes = 0, accessTime = 0;
+	private long nrSpills = 0, nrLoads = 0;
+	/** spilling is tried when the number of nodes in memory exceeds this, see spillIfNeeded */
+	private long spillThreshold;
+
+	private static final class Node {
+		final int outputId;
+		/** by input id, null if the node has no children in memory */
+		Node[] children;
+		long lastAccess;
+		/** for a spilled node: the segment with its subtree, and the number of nodes in it; offset -1 if in memory */
+		long spillOffset = -1;
+		int spillLength;
+		long nrSpilledNodes;
+		/** for a spilled node: the size of its segment and of the segments of the spilled nodes in it */
+		long spillBytes;
+
+		Node(int outputId) {
+			this.outputId = outputId;
+		}
+	}
+
+	/**
+	 * @param inputAlphabet the inputs of all observations
+	 * @param maxResidentNodes the maximum number of nodes in memory (each takes about 40 bytes plus 4 bytes per
+	 * input for its children)
+	 * @param spillFile the file for spilled subtrees, which is overwritten
+	 * @throws IOException if the spill file cannot be created
+	 */
+	public SpillingObservationTree(Collection<? extends I> inputAlphabet, long maxResidentNodes, File spillFile) throws IOException {
+		for (I input : inputAlphabet) {
+			if (!inputIds.containsKey(input)) {
+				inputIds.put(input, inputSymbols.size());
+				inputSymbols.add(input);
+			}
+		}
+		this.maxResidentNodes = maxResidentNodes;
+		this.spillThreshold = maxResidentNodes;
+		this.spillFile = spillFile;
+		this.spillData = new RandomAccessFile(spillFile, "rw");
+		this.spillData.setLength(0);
+	}
+
+	@Override
+	public synchronized int size() {
+		return (int) Math.min(Integer.MAX_VALUE, nrNodes);
+	}
+
+	@Override
+	public void addObservation(Word<I> inputs, Word<O> outputs) throws CacheInconsistencyException {
+		addObservation(inputs.asList(), outputs.asList());
+	}
+
+	@Override
+	public synchronized void addObservation(List<I> inputs, List<O> outputs) throws CacheInconsistencyException {
+		if (inputs.size() != outputs.size()) {
+			throw new RuntimeException("Input and output words should have the same length:\n" + inputs + "\n" + outputs);
+		}
+		long time = ++accessTime;
+		Node node = root;
+		node.lastAccess = time;
+		for (int i = 0; i < inputs.size(); i++) {
+			int inputId = getInputId(inputs.get(i));
+			int outputId = internOutput(outputs.get(i));
+			Node child = getChild(node, inputId);
+			if (child == null) {
+				child = addChild(node, inputId, outputId);
+			} else if (child.outputId != outputId) {
+				// input is inconsistent with previous observations: the old output agrees up to this symbol
+				List<O> oldOutputChain = new ArrayList<>(outputs.subList(0, i));
+				oldOutputChain.add(outputSymbols.get(child.outputId));
+				throw new CacheInconsistencyException(Word.fromList(inputs), Word.fromList(oldOutputChain), Word.fromList(outputs));
+			}
+			node = child;
+			node.lastAccess = time;
+		}
+		spillIfNeeded();
+	}
+
+	@Override
+	public synchronized void replaceObservation(List<I> inputs, List<O> outputs) {
+		if (inputs.size() != outputs.size()) {
+			throw new RuntimeException("Input and output words should have the same length:\n" + inputs + "\n" + outputs);
+		}
+		long time = ++accessTime;
+		Node node = root;
+		node.lastAccess = time;
+		for (int i = 0; i < inputs.size(); i++) {
+			int inputId = getInputId(inputs.get(i));
+			int outputId = internOutput(outputs.get(i));
+			Node child = getChild(node, inputId);
+			if (child != null && child.outputId != outputId) {
+				// cut off the inconsistent branch, and continue as if the input is new
+				removeSubtree(child);
+				node.children[inputId] = null;
+				child = null;
+			}
+			node = child == null ? addChild(node, inputId, outputId) : child;
+			node.lastAccess = time;
+		}
+		spillIfNeeded();
+	}
+
+	@Override
+	public synchronized Word<O> getOutput(Word<I> inputs) {
+		long time = ++accessTime;
+		List<O> outputChain = new ArrayList<>(inputs.size());
+		Node node = root;
+		node.lastAccess = time;
+		for (I input : inputs) {
+			Integer inputId = inputIds.get(input);
+			Node child = inputId == null ? null : getChild(node, inputId);
+			if (child == null) {
+				spillIfNeeded();
+				return null;
+			}
+			node = child;
+			node.lastAccess = time;
+			outputChain.add(outputSymbols.get(node.outputId));
+		}
+		spillIfNeeded();
+		return Word.fromList(outputChain);
+	}
+
+	/**
+	 * Visits spilled subtrees without keeping them in memory, and without changing the access times
+	 */
+	@Override
+	public synchronized void forEachTrace(TraceVisitor<I,O> visitor) {
+		List<I> inputChain = new ArrayList<>();
+		List<O> outputChain = new ArrayList<>();
+		Deque<Node> nodeStack = new ArrayDeque<>();
+		Deque<Integer> inputStack = new ArrayDeque<>(), depthStack = new ArrayDeque<>();
+		nodeStack.push(root);
+		inputStack.push(NO_INPUT);
+		depthStack.push(0);
+		while (!nodeStack.isEmpty()) {
+			Node node = nodeStack.pop();
+			int inputId = inputStack.pop(), depth = depthStack.pop();
+			inputChain.subList(depth, inputChain.size()).clear();
+			outputChain.subList(depth, outputChain.size()).clear();
+			if (node != root) {
+				inputChain.add(inputSymbols.get(inputId));
+				outputChain.add(outputSymbols.get(node.outputId));
+				depth++;
+			}
+			Node[] children = node.spillOffset >= 0 ? readSegment(node, null).children : node.children;
+			boolean leaf = true;
+			if (children != null) {
+				for (int childInput = 0; childInput < children.length; childInput++) {
+					if (children[childInput] != null) {
+						nodeStack.push(children[childInput]);
+						inputStack.push(childInput);
+						depthStack.push(depth);
+						leaf = false;
+					}
+				}
+			}
+			if (leaf && node != root) {
+				visitor.visitTrace(inputChain, outputChain);
+			}
+		}
+	}
+
+	/**
+	 * @return the child for the input, after reading the subtree of the node back if it is spilled, or null
+	 */
+	private Node getChild(Node node, int inputId) {
+		if (node.spillOffset >= 0) {
+			load(node);
+		}
+		return node.children == null ? null : node.children[inputId];
+	}
+
+	private Node addChild(Node node, int inputId, int outputId) {
+		if (node.children == null) {
+			node.children = new Node[inputSymbols.size()];
+		}
+		Node child = new Node(outputId);
+		node.children[inputId] = child;
+		nrNodes++;
+		nrResidentNodes++;
+		return child;
+	}
+
+	private void removeSubtree(Node removed) {
+		Deque<Node> stack = new ArrayDeque<>();
+		stack.push(removed);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			nrNodes--;
+			nrResidentNodes--;
+			if (node.spillOffset >= 0) {
+				// the root of a spilled subtree is in memory, the rest is not
+				nrNodes -= node.nrSpilledNodes - 1;
+				liveBytes -= node.spillBytes;
+				spilledNodes.remove(node);
+			} else if (node.children != null) {
+				for (Node child : node.children) {
+					if (child != null) {
+						stack.push(child);
+					}
+				}
+			}
+		}
+	}
+
+	private void spillIfNeeded() {
+		if (nrResidentNodes <= spillThreshold) {
+			return;
+		}
+		long target = (long) (SPILL_TARGET * maxResidentNodes);
+		// spilling makes the parents of the spilled subtrees smaller, which may make them spillable in the next pass
+		boolean spilled = true;
+		while (nrResidentNodes > target && spilled) {
+			spilled = false;
+			for (Node candidate : findSpillCandidates()) {
+				if (nrResidentNodes <= target) {
+					break;
+				}
+				spill(candidate);
+				spilled = true;
+			}
+		}
+		if (nrResidentNodes > maxResidentNodes) {
+			System.err.println("Warning: the observation tree keeps " + nrResidentNodes + " nodes in memory, more than the bound of "
+					+ maxResidentNodes + ", since the subtrees of the root cannot be spilled");
+			// do not search for subtrees to spill again at every access
+			spillThreshold = nrResidentNodes + maxResidentNodes - target;
+		} else {
+			spillThreshold = maxResidentNodes;
+		}
+		compactIfNeeded();
+	}
+
+	/**
+	 * @return the largest subtrees of limited size in memory, which do not overlap: first those of at least
+	 * MIN_SPILLED_NODES nodes, the least recently used (and of those the largest) first, and then the smaller ones
+	 */
+	private List<Node> findSpillCandidates() {
+		// the sizes of the subtrees in memory, in which a spilled node counts as one
+		final Map<Node, Integer> sizes = new IdentityHashMap<>();
+		List<Node> postOrder = new ArrayList<>();
+		Deque<Node> stack = new ArrayDeque<>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			postOrder.add(node);
+			if (node.children != null) {
+				for (Node child : node.children) {
+					if (child != null) {
+						stack.push(child);
+					}
+				}
+			}
+		}
+		for (int i = postOrder.size() - 1; i >= 0; i--) {
+			Node node = postOrder.get(i);
+			int size = 1;
+			if (node.children != null) {
+				for (Node child : node.children) {
+					if (child != null) {
+						size += sizes.get(child);
+					}
+				}
+			}
+			sizes.put(node, size);
+		}
+		// a node with only leaves as children is always small enough, so that every large subtree has candidates in it
+		final int maxSize = Math.max(MAX_SPILLED_NODES, inputSymbols.size() + 1);
+		List<Node> candidates = new ArrayList<>(), smallCandidates = new ArrayList<>();
+		for (Node node : postOrder) {
+			if (node.children != null && (node == root || sizes.get(node) > maxSize)) {
+				for (Node child : node.children) {
+					// spilling a single node frees nothing
+					if (child != null && sizes.get(child) > 1 && sizes.get(child) <= maxSize) {
+						(sizes.get(child) >= MIN_SPILLED_NODES ? candidates : smallCandidates).add(child);
+					}
+				}
+			}
+		}
+		Comparator<Node> leastRecentlyUsed = new Comparator<Node>() {
+			@Override
+			public int compare(Node node1, Node node2) {
+				int compare = Long.compare(node1.lastAccess, node2.lastAccess);
+				return compare != 0 ? compare : Integer.compare(sizes.get(node2), sizes.get(node1));
+			}
+		};
+		Collections.sort(candidates, leastRecentlyUsed);
+		Collections.sort(smallCandidates, leastRecentlyUsed);
+		candidates.addAll(smallCandidates);
+		return candidates;
+	}
+
+		/**
+	 * Write the subtree of the node to the spill file, and remove it from memory except for the node itself
+	 */
+	private void spill(Node node) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int nrWritten;
+		try {
+			nrWritten = writeSubtree(node, new DataOutputStream(bytes));
+			byte[] segment = bytes.toByteArray();
+			long offset = spillData.length();
+			spillData.seek(offset);
+			spillData.write(segment);
+			node.spillOffset = offset;
+			node.spillLength = segment.length;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		// the segments of the spilled nodes in the subtree were counted already
+		liveBytes += node.spillLength;
+		node.spillBytes += node.spillLength;
+		nrResidentNodes -= nrWritten - 1;
+		node.children = null;
+		spilledNodes.add(node);
+		nrSpills++;
+	}
+
+	/**
+	 * Write the subtree in pre-order, every node as its input, output and number of children. A spilled node in the
+	 * subtree is written with SPILLED as its number of children, followed by its segment (offset and length), the
+	 * size of its segments and its number of nodes. Sets the number of nodes and the size of the segments in the
+	 * subtree of the root, without its own segment.
+	 * @return the number of nodes written
+	 */
+	private int writeSubtree(Node subtreeRoot, DataOutputStream out) throws IOException {
+		int nrWritten = 0;
+		subtreeRoot.nrSpilledNodes = 0;
+		subtreeRoot.spillBytes = 0;
+		Deque<Node> nodeStack = new ArrayDeque<>();
+		Deque<Integer> inputStack = new ArrayDeque<>();
+		nodeStack.push(subtreeRoot);
+		inputStack.push(NO_INPUT);
+		while (!nodeStack.isEmpty()) {
+			Node node = nodeStack.pop();
+			int inputId = inputStack.pop();
+			nrWritten++;
+			out.writeInt(inputId);
+			out.writeInt(node.outputId);
+			if (node.spillOffset >= 0) {
+				out.writeInt(SPILLED);
+				out.writeLong(node.spillOffset);
+				out.writeInt(node.spillLength);
+				out.writeLong(node.spillBytes);
+				out.writeLong(node.nrSpilledNodes);
+				subtreeRoot.nrSpilledNodes += node.nrSpilledNodes;
+				subtreeRoot.spillBytes += node.spillBytes;
+				// only reachable through the new segment from now on
+				spilledNodes.remove(node);
+				continue;
+			}
+			subtreeRoot.nrSpilledNodes++;
+			int nrChildren = 0;
+			if (node.children != null) {
+				for (int childInput = node.children.length - 1; childInput >= 0; childInput--) {
+					if (node.children[childInput] != null) {
+						nodeStack.push(node.children[childInput]);
+						inputStack.push(childInput);
+						nrChildren++;
+					}
+				}
+			}
+			out.writeInt(nrChildren);
+		}
+		return nrWritten;
+	}
+
+	/**
+	 * Read the subtree of a spilled node back into memory
+	 */
+	private void load(Node node) {
+		List<Node> spilledChildren = new ArrayList<>();
+		Node loaded = readSegment(node, spilledChildren);
+		node.children = loaded.children;
+		node.spillOffset = -1;
+		liveBytes -= node.spillLength;
+		// the spilled nodes in the segment come in memory, but their subtrees stay on disk
+		long nrLoaded = node.nrSpilledNodes;
+		for (Node spilledChild : spilledChildren) {
+			nrLoaded -= spilledChild.nrSpilledNodes - 1;
+		}
+		nrResidentNodes += nrLoaded - 1;
+		spilledNodes.remove(node);
+		spilledNodes.addAll(spilledChildren);
+		nrLoads++;
+	}
+
+	/**
+	 * @param spilledNodes receives the spilled nodes in the segment, or null
+	 * @return a copy of the spilled subtree of the node, not connected to the tree
+	 */
+	private Node readSegment(Node node, List<Node> spilledNodes) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(readBytes(node)));
+			Node segmentRoot = null;
+			Deque<Node> parents = new ArrayDeque<>();
+			Deque<Integer> remainingChildren = new ArrayDeque<>();
+			do {
+				int inputId = in.readInt(), outputId = in.readInt(), nrChildren = in.readInt();
+				Node current = new Node(outputId);
+				current.lastAccess = node.lastAccess;
+				if (nrChildren == SPILLED) {
+					current.spillOffset = in.readLong();
+					current.spillLength = in.readInt();
+					current.spillBytes = in.readLong();
+					current.nrSpilledNodes = in.readLong();
+					nrChildren = 0;
+					if (spilledNodes != null) {
+						spilledNodes.add(current);
+					}
+				}
+				if (segmentRoot == null) {
+					segmentRoot = current;
+				} else {
+					Node parent = parents.peek();
+					if (parent.children == null) {
+						parent.children = new Node[inputSymbols.size()];
+					}
+					parent.children[inputId] = current;
+					remainingChildren.push(remainingChildren.pop() - 1);
+				}
+				parents.push(current);
+				remainingChildren.push(nrChildren);
+				while (!remainingChildren.isEmpty() && remainingChildren.peek() == 0) {
+					parents.pop();
+					remainingChildren.pop();
+				}
+			} while (!parents.isEmpty());
+			return segmentRoot;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private byte[] readBytes(Node node) throws IOException {
+		byte[] segment = new byte[node.spillLength];
+		spillData.seek(node.spillOffset);
+		spillData.readFully(segment);
+		return segment;
+	}
+
+	/**
+	 * Copy the segments of the spilled nodes (and the segments in them) to a new file, if most of the spill file is
+	 * not used anymore
+	 */
+	private void compactIfNeeded() {
+		try {
+			if (spillData.length() < MIN_FILE_SIZE_FOR_COMPACTION || spillData.length() < 2 * liveBytes) {
+				return;
+			}
+			File compactFile = new File(spillFile.getPath() + ".compact");
+			Map<Node, Long> newOffsets = new IdentityHashMap<>();
+			try (RandomAccessFile compactData = new RandomAccessFile(compactFile, "rw")) {
+				compactData.setLength(0);
+				for (Node node : spilledNodes) {
+					newOffsets.put(node, copySegment(node.spillOffset, node.spillLength, compactData));
+				}
+			}
+			spillData.close();
+			if (!spillFile.delete() || !compactFile.renameTo(spillFile)) {
+				throw new IOException("Could not replace " + spillFile + " by its compacted version");
+			}
+			spillData = new RandomAccessFile(spillFile, "rw");
+			for (Map.Entry<Node, Long> newOffset : newOffsets.entrySet()) {
+				newOffset.getKey().spillOffset = newOffset.getValue();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Copy a segment to the compacted file, after the segments it refers to, which are copied first
+	 * @return the offset of the copy
+	 */
+	private long copySegment(long offset, int length, RandomAccessFile compactData) throws IOException {
+		byte[] segment = new byte[length];
+		spillData.seek(offset);
+		spillData.readFully(segment);
+		ByteBuffer buffer = ByteBuffer.wrap(segment);
+		while (buffer.hasRemaining()) {
+			// skip the input and the output
+			buffer.position(buffer.position() + 8);
+			if (buffer.getInt() == SPILLED) {
+				int position = buffer.position();
+				long nestedOffset = buffer.getLong();
+				int nestedLength = buffer.getInt();
+				buffer.putLong(position, copySegment(nestedOffset, nestedLength, compactData));
+				// skip the size of the segments and the number of nodes
+				buffer.position(buffer.position() + 16);
+			}
+		}
+		long newOffset = compactData.getFilePointer();
+		compactData.write(segment);
+		return newOffset;
+	}
+
+	private int getInputId(I input) {
+		Integer inputId = inputIds.get(input);
+		if (inputId == null) {
+			throw new IllegalArgumentException("Input " + input + " is not in the alphabet of the observation tree");
+		}
+		return inputId;
+	}
+
+	private int internOutput(O output) {
+		Integer id = outputIds.get(output);
+		if (id == null) {
+			id = outputSymbols.size();
+			outputIds.put(output, id);
+			outputSymbols.add(output);
+		}
+		return id;
+	}
+
+	/**
+	 * @return the number of nodes in memory
+	 */
+	public synchronized long getNrResidentNodes() {
+		return nrResidentNodes;
+	}
+
+	/**
+	 * @return the number of subtrees written to the spill file so far
+	 */
+	public synchronized long getNrSpills() {
+		return nrSpills;
+	}
+
+	/**
+	 * @return the number of spilled subtrees read back so far
+	 */
+	public synchronized long getNrLoads() {
+		return nrLoads;
+	}
+
+	/**
+	 * Closes and deletes the spill file
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		spillData.close();
+		spillFile.delete();
+	}
+}
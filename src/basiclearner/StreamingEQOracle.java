@@ -0,0 +1,134 @@
+package basiclearner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import de.learnlib.api.EquivalenceOracle;
+import de.learnlib.api.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.oracles.DefaultQuery;
+import de.learnlib.statistics.Counter;
+
+/**
+ * Equivalence oracle which tests the words of a TestWordGenerator as they are generated. Every word is first
+ * looked up in the observation tree: if its outputs are already known (also as a prefix of an earlier trace), it
+ * is compared to the hypothesis without running it. Only the other words are sent to the membership oracle, in
+ * batches, so that a PrefixSharingOracle or ParallelSULOracle behind it can work on many words at once. Stops at
+ * the first batch with a counterexample, and returns the shortest one, cut off after its first difference.
+ *
+ * @param <I>
+ * @param <O>
+ */
+public class StreamingEQOracle<I,O> implements EquivalenceOracle<MealyMachine<?, I, ?, O>, I, Word<O>> {
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	private final TestWordGenerator<I> generator;
+	private final ObservationCache<I,O> observations;
+	private final MealyMembershipOracle<I,O> oracle;
+	private final int batchSize;
+	private AtomicBoolean cancelled = null;
+	private final Counter nrFromCache = new Counter("test words decided from cache", "words");
+	private final Counter nrQueried = new Counter("test words queried", "words");
+
+	/**
+	 * @param generator generates the test words for every hypothesis
+	 * @param observations the observations of the SUL so far
+	 * @param oracle answers the test words which are not in the observations
+	 */
+	public StreamingEQOracle(TestWordGenerator<I> generator, ObservationCache<I,O> observations, MealyMembershipOracle<I,O> oracle) {
+		this(generator, observations, oracle, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param generator generates the test words for every hypothesis
+	 * @param observations the observations of the SUL so far
+	 * @param oracle answers the test words which are not in the observations
+	 * @param batchSize the number of test words to send to the oracle at once
+	 */
+	public StreamingEQOracle(TestWordGenerator<I> generator, ObservationCache<I,O> observations, MealyMembershipOracle<I,O> oracle, int batchSize) {
+		this.generator = generator;
+		this.observations = observations;
+		this.oracle = oracle;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param cancelled flag which stops the test with a CancellationException when set, also while the test words
+	 * are decided from the cache (see CancellableSUL), or null
+	 */
+	public void setCancelFlag(AtomicBoolean cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	@Override
+	public DefaultQuery<I, Word<O>> findCounterExample(MealyMachine<?, I, ?, O> hypothesis, Collection<? extends I> inputs) {
+		Iterator<Word<I>> words = generator.generate(hypothesis, inputs);
+		List<DefaultQuery<I, Word<O>>> batch = new ArrayList<>(batchSize);
+		while (words.hasNext()) {
+			CancellableSUL.checkCancelled(cancelled);
+			Word<I> word = words.next();
+			Word<O> knownOutput = observations.getOutput(word);
+			if (knownOutput != null) {
+				nrFromCache.increment();
+				DefaultQuery<I, Word<O>> counterexample = findDifference(hypothesis, word, knownOutput);
+				if (counterexample != null) {
+					return counterexample;
+				}
+			} else {
+				batch.add(new DefaultQuery<I, Word<O>>(word));
+				if (batch.size() == batchSize) {
+					DefaultQuery<I, Word<O>> counterexample = processBatch(hypothesis, batch);
+					if (counterexample != null) {
+						return counterexample;
+					}
+					batch.clear();
+				}
+			}
+		}
+		return processBatch(hypothesis, batch);
+	}
+
+	private DefaultQuery<I, Word<O>> processBatch(MealyMachine<?, I, ?, O> hypothesis, List<DefaultQuery<I, Word<O>>> batch) {
+		if (batch.isEmpty()) {
+			return null;
+		}
+		nrQueried.increment(batch.size());
+		oracle.processQueries(batch);
+		DefaultQuery<I, Word<O>> shortest = null;
+		for (DefaultQuery<I, Word<O>> query : batch) {
+			DefaultQuery<I, Word<O>> counterexample = findDifference(hypothesis, query.getInput(), query.getOutput());
+			if (counterexample != null && (shortest == null || counterexample.getInput().length() < shortest.getInput().length())) {
+				shortest = counterexample;
+			}
+		}
+		return shortest;
+	}
+
+	/**
+	 * @return the word up to and including the first output which differs from the hypothesis, with its outputs,
+	 * or null if there is no difference
+	 */
+	static <S,I,O> DefaultQuery<I, Word<O>> findDifference(MealyMachine<S, I, ?, O> hypothesis, Word<I> input, Word<O> output) {
+		S state = hypothesis.getInitialState();
+		for (int i = 0; i < input.length(); i++) {
+			if (!Objects.equals(output.getSymbol(i), hypothesis.getOutput(state, input.getSymbol(i)))) {
+				return new DefaultQuery<I, Word<O>>(Word.<I>epsilon(), input.prefix(i + 1), output.prefix(i + 1));
+			}
+			state = hypothesis.getSuccessor(state, input.getSymbol(i));
+		}
+		return null;
+	}
+
+	public Counter getFromCacheCounter() {
+		return nrFromCache;
+	}
+
+	public Counter getQueriedCounter() {
+		return nrQueried;
+	}
+}
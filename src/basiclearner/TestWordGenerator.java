@@ -0,0 +1,23 @@
+package basiclearner;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+
+/**
+ * Generates the test words for an equivalence oracle, such as ParallelEQOracle. Words are generated lazily,
+ * so that an oracle which finds a counterexample early does not pay for the rest of the test suite. The
+ * iterator is only used by one thread at a time, but not always the same thread.
+ *
+ * @param <I> the input type of the test words
+ */
+public interface TestWordGenerator<I> {
+	/**
+	 * @param hypothesis the hypothesis to test
+	 * @param inputs the inputs to test
+	 * @return the test words, in the order in which they should be tried
+	 */
+	Iterator<Word<I>> generate(MealyMachine<?, I, ?, ?> hypothesis, Collection<? extends I> inputs);
+}
@@ -0,0 +1,14 @@
+package basiclearner;
+
+import net.automatalib.words.Word;
+
+/**
+ * Thrown when the outputs of a query turned out to be wrong: they contradict earlier observations, and repeating
+ * the query showed that the earlier observations are right. The query should be run again, its outputs should not
+ * be used.
+ */
+public class TransientNonDeterminismException extends CacheInconsistencyException {
+	public TransientNonDeterminismException(Word input, Word oldOutput, Word newOutput) {
+		super("Transient non-determinism, the query should be run again", input, oldOutput, newOutput);
+	}
+}
@@ -0,0 +1,141 @@
+package basiclearner;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+/**
+ * Generates the test suite of the W-method or the Wp-method lazily, one word at a time. Only the structure of the
+ * hypothesis is kept in memory (access sequences and distinguishing words, linear in its size), never the test
+ * suite itself, which grows with the number of inputs to the power maxDepth.
+ *
+ * The W-method tests every word access sequence . (empty or one input) . middle . W, with a middle part of at most
+ * maxDepth inputs and W a characterizing set. The Wp-method tests every access sequence . W, and then every
+ * access sequence . input . middle . W(s), with W(s) the words which identify the state s reached by the word so far.
+ *
+ * @param <I> the input type of the test words
+ */
+public class WMethodWordGenerator<I> implements TestWordGenerator<I> {
+	private final int maxDepth;
+	private final boolean wpMethod;
+
+	/**
+	 * @param maxDepth the maximum length of the middle part of the test words
+	 * @param wpMethod true for the Wp-method, false for the W-method
+	 */
+	public WMethodWordGenerator(int maxDepth, boolean wpMethod) {
+		this.maxDepth = maxDepth;
+		this.wpMethod = wpMethod;
+	}
+
+	@Override
+	public Iterator<Word<I>> generate(MealyMachine<?, I, ?, ?> hypothesis, Collection<? extends I> inputs) {
+		return new Words(new HypothesisStructure<I>(hypothesis, inputs));
+	}
+
+	/**
+	 * Iterates over the infixes (access sequence, optional input, middle part) in nested order, and for every
+	 * infix over its suffixes
+	 */
+	private class Words implements Iterator<Word<I>> {
+		private final HypothesisStructure<I> structure;
+		/** for the Wp-method, the first phase only tests the access sequences with W */
+		private boolean firstPhase = wpMethod;
+		private int state = 0, input, middleLength = 0;
+		private final int[] middle = new int[maxDepth];
+		private boolean started = false;
+		private Word<I> infix;
+		private List<Word<I>> suffixes;
+		private int suffix = 0;
+
+		Words(HypothesisStructure<I> structure) {
+			this.structure = structure;
+			this.input = wpMethod ? 0 : -1;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (suffixes == null || suffix >= suffixes.size()) {
+				if (!nextInfix()) {
+					return false;
+				}
+				suffix = 0;
+			}
+			return true;
+		}
+
+		@Override
+		public Word<I> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return infix.concat(suffixes.get(suffix++));
+		}
+
+		private boolean nextInfix() {
+			if (firstPhase) {
+				if (started) {
+					state++;
+				}
+				started = true;
+				if (state < structure.getNrStates()) {
+					infix = structure.getAccessSequence(state);
+					suffixes = structure.getCharacterizingSet();
+					return true;
+				}
+				firstPhase = false;
+				started = false;
+				state = 0;
+			}
+			if (started && !nextMiddle()) {
+				middleLength = 0;
+				input++;
+				if (input == structure.getNrInputs()) {
+					input = wpMethod ? 0 : -1;
+					state++;
+				}
+			}
+			started = true;
+			if (state >= structure.getNrStates() || structure.getNrInputs() == 0) {
+				return false;
+			}
+			WordBuilder<I> word = new WordBuilder<>();
+			word.append(structure.getAccessSequence(state));
+			int reached = state;
+			if (input >= 0) {
+				word.append(structure.getInput(input));
+				reached = structure.getSuccessor(reached, input);
+			}
+			for (int i = 0; i < middleLength; i++) {
+				word.append(structure.getInput(middle[i]));
+				reached = structure.getSuccessor(reached, middle[i]);
+			}
+			infix = word.toWord();
+			suffixes = wpMethod ? structure.getStateIdentifier(reached) : structure.getCharacterizingSet();
+			return true;
+		}
+
+		/**
+		 * Count the middle part up like an odometer, first all words of length 1, then of length 2, etc.
+		 * @return false if all middle parts of at most maxDepth inputs have been used
+		 */
+		private boolean nextMiddle() {
+			for (int i = middleLength - 1; i >= 0; i--) {
+				if (++middle[i] < structure.getNrInputs()) {
+					return true;
+				}
+				middle[i] = 0;
+			}
+			if (middleLength < maxDepth) {
+				middle[middleLength++] = 0;
+				return true;
+			}
+			return false;
+		}
+	}
+}